@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Learns how many connections to use for multipart uploads to a host configuration, additive increase, multiplicative decrease.
+ * Uploads made with the same count are measured together until at least MIN_SAMPLE_BYTES have been sent, so that one small
+ * file is not compared against one large one; the count then goes up by one while the throughput holds up, and is halved when
+ * the throughput drops. It is halved straight away when parts fail. The learned count is kept for the life of the JVM, so the
+ * next build starts from where the last one left off, and the controller and each agent learn their own.
+ */
+public final class BPAdaptiveConcurrency {
+
+    static final int INITIAL_CONNECTIONS = 2;
+    static final double DECREASE_THRESHOLD = 0.9;
+    static final long MIN_SAMPLE_BYTES = 8 * MultipartTransfer.MIN_PART_SIZE;
+    private static final ConcurrentMap<String, BPAdaptiveConcurrency> CONTROLLERS =
+            new ConcurrentHashMap<String, BPAdaptiveConcurrency>();
+
+    public static BPAdaptiveConcurrency get(final BPHostConfiguration hostConfig) {
+        final String name = hostConfig.getName();
+        if (name == null) return new BPAdaptiveConcurrency();
+        BPAdaptiveConcurrency controller = CONTROLLERS.get(name);
+        if (controller == null) {
+            final BPAdaptiveConcurrency created = new BPAdaptiveConcurrency();
+            controller = CONTROLLERS.putIfAbsent(name, created);
+            if (controller == null) controller = created;
+        }
+        return controller;
+    }
+
+    static void clear() {
+        CONTROLLERS.clear();
+    }
+
+    private int connections;
+    private double throughput;
+    private int sampleConnections;
+    private long sampleBytes;
+    private long sampleNanos;
+
+    /**
+     * @return the number of connections to use for the next upload, no more than max
+     */
+    public synchronized int getConnections(final int max) {
+        if (connections == 0) connections = INITIAL_CONNECTIONS;
+        return Math.max(1, Math.min(connections, max));
+    }
+
+    /**
+     * Record a completed upload
+     * @return the number of connections that the next upload will use, before it is capped to the transfer's maximum
+     */
+    public synchronized int record(final int used, final long bytes, final long nanos, final boolean hadErrors) {
+        if (hadErrors) {
+            decrease(used);
+            return connections;
+        }
+        if (used != sampleConnections) resetSample(used);
+        sampleBytes += bytes;
+        sampleNanos += nanos;
+        if (sampleBytes < MIN_SAMPLE_BYTES) return connections == 0 ? used : connections;
+        final double observed = sampleNanos <= 0 ? 0 : sampleBytes * (double) TimeUnit.SECONDS.toNanos(1) / sampleNanos;
+        connections = observed < throughput * DECREASE_THRESHOLD ? Math.max(1, used / 2) : used + 1;
+        throughput = observed;
+        resetSample(0);
+        return connections;
+    }
+
+    /**
+     * Record an upload that failed
+     */
+    public synchronized void failed(final int used) {
+        decrease(used);
+    }
+
+    private void decrease(final int used) {
+        connections = Math.max(1, used / 2);
+        throughput = 0;
+        resetSample(0);
+    }
+
+    private void resetSample(final int used) {
+        sampleConnections = used;
+        sampleBytes = 0;
+        sampleNanos = 0;
+    }
+
+    /**
+     * @return bytes per second seen over the last complete sample, 0 if there is none
+     */
+    public synchronized double getThroughput() {
+        return throughput;
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket that caps the upload rate to a host configuration, shared by every publish to it from this JVM.
+ * Uploads take tokens for small chunks through a fair lock, and the holder sleeps off any debt before letting the next one in,
+ * so concurrent uploads share the bandwidth evenly instead of the first one taking all of it.
+ * The buckets live on the controller. A publish that runs on an agent is given a limiter of its own that takes tokens from the
+ * controller's bucket in larger grants through BPBandwidthGrants, so the agent's uploads share the rate with everyone else's.
+ */
+public final class BPBandwidthLimiter {
+
+    public static final int KILOBYTE = 1024;
+    private static final int MAX_CHUNK = 16 * KILOBYTE;
+    private static final int MAX_GRANT = KILOBYTE * KILOBYTE;
+    private static final int GRANTS_PER_SECOND = 4;
+    private static final ConcurrentMap<String, BPBandwidthLimiter> LIMITERS = new ConcurrentHashMap<String, BPBandwidthLimiter>();
+
+    /**
+     * @return the limiter for the configuration, or null if it has no bandwidth limit
+     */
+    public static BPBandwidthLimiter get(final BPHostConfiguration hostConfig) {
+        final String name = hostConfig.getName();
+        final long rate = (long) hostConfig.getBandwidthLimit() * KILOBYTE;
+        if (rate <= 0) {
+            if (name != null) LIMITERS.remove(name);
+            return null;
+        }
+        BPBandwidthLimiter limiter = LIMITERS.get(name);
+        if (limiter == null) {
+            final BPBandwidthLimiter created = new BPBandwidthLimiter(rate);
+            limiter = LIMITERS.putIfAbsent(name, created);
+            if (limiter == null) limiter = created;
+        }
+        limiter.setRate(rate);
+        return limiter;
+    }
+
+    /**
+     * @param grants tokens from the buckets on the controller, or null to use the bucket in this JVM
+     * @return the limiter for the configuration, or null if it has no bandwidth limit
+     */
+    public static BPBandwidthLimiter get(final BPHostConfiguration hostConfig, final BPBandwidthGrants grants) {
+        if (grants == null) return get(hostConfig);
+        final long rate = (long) hostConfig.getBandwidthLimit() * KILOBYTE;
+        return rate <= 0 ? null : new BPBandwidthLimiter(rate, hostConfig.getName(), grants);
+    }
+
+    /**
+     * @return grants from the buckets in this JVM, to export to an agent
+     */
+    static BPBandwidthGrants createGrants() {
+        return new Grants();
+    }
+
+    /**
+     * @return the stream, throttled if there is a limiter
+     */
+    public static InputStream throttle(final BPBandwidthLimiter limiter, final InputStream inputStream) {
+        return limiter == null ? inputStream : limiter.new ThrottledInputStream(inputStream);
+    }
+
+    static void clear() {
+        LIMITERS.clear();
+    }
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private volatile long rate;
+    private final String configName;
+    private final BPBandwidthGrants grants;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    BPBandwidthLimiter(final long rate) {
+        this.rate = rate;
+        configName = null;
+        grants = null;
+        tokens = rate;
+    }
+
+    private BPBandwidthLimiter(final long rate, final String configName, final BPBandwidthGrants grants) {
+        this.rate = rate;
+        this.configName = configName;
+        this.grants = grants;
+    }
+
+    public long getRate() { return rate; }
+
+    private void setRate(final long rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * Take tokens for bytes that have been, or are about to be, sent, waiting until the bucket is back out of debt
+     */
+    void acquire(final int bytes) throws InterruptedIOException {
+        try {
+            lock.lockInterruptibly();
+            try {
+                if (grants != null) {
+                    if (tokens < bytes) {
+                        final int grant = (int) Math.max(bytes - tokens, getGrantSize());
+                        grants.acquire(configName, grant);
+                        tokens += grant;
+                    }
+                    tokens -= bytes;
+                    return;
+                }
+                final long now = System.nanoTime();
+                final long currentRate = rate;
+                tokens = Math.min(currentRate, tokens + (now - lastRefill) * (double) currentRate / TimeUnit.SECONDS.toNanos(1));
+                lastRefill = now;
+                tokens -= bytes;
+                if (tokens < 0)
+                    TimeUnit.NANOSECONDS.sleep((long) (-tokens * TimeUnit.SECONDS.toNanos(1) / currentRate));
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(Messages.exception_bandwidthWaitInterrupted());
+        }
+    }
+
+    private int getChunkSize() {
+        return (int) Math.max(1, Math.min(MAX_CHUNK, rate / 10));
+    }
+
+    private int getGrantSize() {
+        return (int) Math.max(getChunkSize(), Math.min(MAX_GRANT, rate / GRANTS_PER_SECOND));
+    }
+
+    /**
+     * Called for each grant that an agent asks for, so the bucket of a configuration without a limit any more is not recreated
+     */
+    private static final class Grants implements BPBandwidthGrants {
+
+        public void acquire(final String configName, final int bytes) throws InterruptedIOException {
+            final BPBandwidthLimiter limiter = LIMITERS.get(configName);
+            if (limiter != null) limiter.acquire(bytes);
+        }
+
+    }
+
+    private class ThrottledInputStream extends FilterInputStream {
+
+        ThrottledInputStream(final InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read >= 0) acquire(1);
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, Math.min(length, getChunkSize()));
+            if (read > 0) acquire(read);
+            return read;
+        }
+
+    }
+
+}
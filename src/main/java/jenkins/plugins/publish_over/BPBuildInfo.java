@@ -24,6 +24,7 @@
 
 package jenkins.plugins.publish_over;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.FilePath;
 import hudson.Util;
 import hudson.model.TaskListener;
@@ -35,6 +36,11 @@ import org.apache.commons.lang.builder.ToStringStyle;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.TreeMap;
 
 @SuppressWarnings({ "PMD.LooseCoupling" }) // SERIALIZABLE!!!!!!!
@@ -47,10 +53,28 @@ public class BPBuildInfo extends BPBuildEnv {
     private FilePath configDir;
     private TaskListener listener;
     private boolean verbose;
+    private boolean verboseSummary;
+    private boolean consoleBuffered;
     private String consoleMsgPrefix;
     private BPBuildEnv currentBuildEnv;
     private BPBuildEnv targetBuildEnv;
     private final TreeMap<String, Serializable> context = new TreeMap<String, Serializable>();
+    private transient BPClientFactory clientFactory;
+    private transient BPBandwidthLimiter bandwidthLimiter;
+    private transient BPAdaptiveConcurrency adaptiveConcurrency;
+    private transient BPUploadRates uploadRates;
+    private transient Set<String> envVarsToSend;
+    private transient boolean slim;
+    private transient BPConsoleBuffer consoleBuffer;
+    private transient boolean summarizing;
+    private transient BPPublisherMetrics metrics;
+    private transient List<BPPublisherMetrics> publisherMetrics;
+    private String connectionCacheId;
+    private BPTrace trace;
+    @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "an exported proxy when sent to an agent")
+    private BPSessionPermits sessionPermits;
+    @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "an exported proxy when sent to an agent")
+    private BPBandwidthGrants bandwidthGrants;
 
     public BPBuildInfo() { }
 
@@ -75,12 +99,102 @@ public class BPBuildInfo extends BPBuildEnv {
     public boolean isVerbose() { return verbose; }
     public void setVerbose(final boolean verbose) { this.verbose = verbose; }
 
+    public boolean isVerboseSummary() { return verboseSummary; }
+    public void setVerboseSummary(final boolean verboseSummary) { this.verboseSummary = verboseSummary; }
+
+    public boolean isConsoleBuffered() { return consoleBuffered; }
+    public void setConsoleBuffered(final boolean consoleBuffered) { this.consoleBuffered = consoleBuffered; }
+
+    /**
+     * @param summarizing true while files are transferred with verboseSummary, to leave out the lines from printFileIfVerbose
+     */
+    void setSummarizing(final boolean summarizing) { this.summarizing = summarizing; }
+
     public BPBuildEnv getCurrentBuildEnv() { return currentBuildEnv; }
     public void setCurrentBuildEnv(final BPBuildEnv currentBuildEnv) { this.currentBuildEnv = currentBuildEnv; }
 
     public BPBuildEnv getTargetBuildEnv() { return targetBuildEnv; }
     public void setTargetBuildEnv(final BPBuildEnv targetBuildEnv) { this.targetBuildEnv = targetBuildEnv; }
 
+    public BPClientFactory getClientFactory() { return clientFactory; }
+    public void setClientFactory(final BPClientFactory clientFactory) { this.clientFactory = clientFactory; }
+
+    public BPBandwidthLimiter getBandwidthLimiter() { return bandwidthLimiter; }
+    public void setBandwidthLimiter(final BPBandwidthLimiter bandwidthLimiter) { this.bandwidthLimiter = bandwidthLimiter; }
+
+    public BPUploadRates getUploadRates() { return uploadRates; }
+    public void setUploadRates(final BPUploadRates uploadRates) { this.uploadRates = uploadRates; }
+
+    public BPAdaptiveConcurrency getAdaptiveConcurrency() { return adaptiveConcurrency; }
+    public void setAdaptiveConcurrency(final BPAdaptiveConcurrency adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+
+    /**
+     * @param envVarsToSend names of the only environment variables to send to an agent, or null to send them all
+     */
+    public void setEnvVarsToSend(final Set<String> envVarsToSend) { this.envVarsToSend = envVarsToSend; }
+
+    /**
+     * @return the metrics of the publisher that is running, for its transfers to add to
+     */
+    public BPPublisherMetrics getMetrics() { return metrics; }
+    public void setMetrics(final BPPublisherMetrics metrics) { this.metrics = metrics; }
+
+    /**
+     * @return the trace that operations are recorded in, or null if the build is not traced
+     */
+    public BPTrace getTrace() { return trace; }
+    public void setTrace(final BPTrace trace) { this.trace = trace; }
+
+    /**
+     * Record an operation in the trace, if there is one, against the host configuration of the publisher that is running
+     */
+    public void trace(final String phase, final String path, final long bytes, final long nanos, final boolean success) {
+        if (trace != null) trace.record(phase, metrics == null ? null : metrics.getConfigName(), path, bytes, nanos, success);
+    }
+
+    /**
+     * Wait for the operations recorded so far to be written to the trace
+     */
+    public void flushTrace() {
+        if (trace != null) trace.flush();
+    }
+
+    /**
+     * @return the sessions for the other connections of the publish, or null if its host configuration does not limit them
+     */
+    public BPSessionPermits getSessionPermits() { return sessionPermits; }
+    public void setSessionPermits(final BPSessionPermits sessionPermits) { this.sessionPermits = sessionPermits; }
+
+    /**
+     * @return tokens from the bandwidth buckets on the controller, or null if the publish runs there or has no bandwidth limit
+     */
+    public BPBandwidthGrants getBandwidthGrants() { return bandwidthGrants; }
+    public void setBandwidthGrants(final BPBandwidthGrants bandwidthGrants) { this.bandwidthGrants = bandwidthGrants; }
+
+    /**
+     * @return the metrics of the publishers that have finished in this JVM, including those of any copies of this build info
+     */
+    public ArrayList<BPPublisherMetrics> getPublisherMetrics() {
+        final List<BPPublisherMetrics> all = getPublisherMetricsList();
+        synchronized (all) {
+            return new ArrayList<BPPublisherMetrics>(all);
+        }
+    }
+
+    public void addPublisherMetrics(final Collection<BPPublisherMetrics> toAdd) {
+        getPublisherMetricsList().addAll(toAdd);
+    }
+
+    private synchronized List<BPPublisherMetrics> getPublisherMetricsList() {
+        if (publisherMetrics == null) publisherMetrics = Collections.synchronizedList(new ArrayList<BPPublisherMetrics>());
+        return publisherMetrics;
+    }
+
+    public String getConnectionCacheId() { return connectionCacheId; }
+    public void setConnectionCacheId(final String connectionCacheId) { this.connectionCacheId = connectionCacheId; }
+
     public Serializable get(final String key) {
         return context.get(key);
     }
@@ -91,6 +205,63 @@ public class BPBuildInfo extends BPBuildEnv {
         return context.remove(key);
     }
 
+    /**
+     * @return a copy that one publisher can change without affecting the others, with its own console prefix and context,
+     * sharing the listener and build environments
+     */
+    public BPBuildInfo copy(final String consoleMsgPrefix) {
+        final BPBuildInfo copy = new BPBuildInfo(listener, consoleMsgPrefix, configDir, currentBuildEnv, targetBuildEnv);
+        copy.setEnvVars(getEnvVars());
+        copy.setBaseDirectory(getBaseDirectory());
+        copy.setBuildTime(getBuildTime());
+        copy.verbose = verbose;
+        copy.verboseSummary = verboseSummary;
+        copy.consoleBuffered = consoleBuffered;
+        copy.connectionCacheId = connectionCacheId;
+        copy.trace = trace;
+        copy.sessionPermits = sessionPermits;
+        copy.bandwidthGrants = bandwidthGrants;
+        copy.envVarsToSend = envVarsToSend;
+        copy.publisherMetrics = getPublisherMetricsList();
+        copy.context.putAll(context);
+        return copy;
+    }
+
+    /**
+     * Sent to an agent, the build info only carries the effective environment, set by the publisher before it is sent, rather
+     * than that as well as the variables of the current and target builds, and can leave out the variables that are not used
+     */
+    private Object writeReplace() {
+        if (slim || getClass() != BPBuildInfo.class || getEnvVars() == null) return this;
+        final BPBuildInfo replacement = new BPBuildInfo(listener, consoleMsgPrefix, configDir, withoutEnvVars(currentBuildEnv),
+                withoutEnvVars(targetBuildEnv));
+        replacement.setBaseDirectory(getBaseDirectory());
+        replacement.setBuildTime(getBuildTime());
+        replacement.verbose = verbose;
+        replacement.verboseSummary = verboseSummary;
+        replacement.consoleBuffered = consoleBuffered;
+        replacement.connectionCacheId = connectionCacheId;
+        replacement.trace = trace;
+        replacement.sessionPermits = sessionPermits;
+        replacement.bandwidthGrants = bandwidthGrants;
+        replacement.context.putAll(context);
+        if (envVarsToSend == null) {
+            replacement.setEnvVars(getEnvVars());
+        } else {
+            final TreeMap<String, String> used = new TreeMap<String, String>();
+            for (String name : envVarsToSend) {
+                if (getEnvVars().containsKey(name)) used.put(name, getEnvVars().get(name));
+            }
+            replacement.setEnvVars(used);
+        }
+        replacement.slim = true;
+        return replacement;
+    }
+
+    private static BPBuildEnv withoutEnvVars(final BPBuildEnv buildEnv) {
+        return buildEnv == null ? null : new BPBuildEnv(null, buildEnv.getBaseDirectory(), buildEnv.getBuildTime());
+    }
+
     public boolean onMaster() {
         return !configDir.isRemote();
     }
@@ -109,7 +280,17 @@ public class BPBuildInfo extends BPBuildEnv {
     }
 
     public String getRelativePathToFile(final FilePath filePath, final String removePrefix) throws IOException, InterruptedException {
-        final String relativePathToFile = getRelativeDir(filePath, removePrefix);
+        return getParentPath(getRelativeDir(filePath, removePrefix));
+    }
+
+    /**
+     * @param relativePath the path of a file relative to the base directory, with / as the separator
+     */
+    public String getRelativePathToFile(final String relativePath, final String removePrefix) {
+        return getParentPath(removeConfiguredPrefix(relativePath, removePrefix));
+    }
+
+    private static String getParentPath(final String relativePathToFile) {
         final int lastDirIdx = relativePathToFile.lastIndexOf('/');
         if (lastDirIdx == -1)
             return "";
@@ -119,12 +300,13 @@ public class BPBuildInfo extends BPBuildEnv {
 
     public String getRelativeDir(final FilePath filePath, final String removePrefix) throws IOException, InterruptedException {
         final String normalizedPath = filePath.toURI().normalize().getPath();
-        String relativePath = normalizedPath.replace(getNormalizedBaseDirectory(), "");
-        if (Util.fixEmptyAndTrim(removePrefix) != null) {
-            final String expanded = Util.fixEmptyAndTrim(Util.replaceMacro(removePrefix.trim(), getEnvVars()));
-            relativePath = removePrefix(relativePath, expanded);
-        }
-        return relativePath;
+        return removeConfiguredPrefix(normalizedPath.replace(getNormalizedBaseDirectory(), ""), removePrefix);
+    }
+
+    private String removeConfiguredPrefix(final String relativePath, final String removePrefix) {
+        if (Util.fixEmptyAndTrim(removePrefix) == null) return relativePath;
+        final String expanded = Util.fixEmptyAndTrim(Util.replaceMacro(removePrefix.trim(), getEnvVars()));
+        return removePrefix(relativePath, expanded);
     }
 
     private String removePrefix(final String relativePathToFile, final String expandedPrefix) {
@@ -134,7 +316,7 @@ public class BPBuildInfo extends BPBuildEnv {
             if (toRemove.charAt(0) == '/')
                 toRemove = toRemove.substring(1);
             if (!relativePathToFile.startsWith(toRemove)) {
-                throw new BapPublisherException(Messages.exception_removePrefix_noMatch(relativePathToFile, toRemove));
+                throw new BapPermanentException(Messages.exception_removePrefix_noMatch(relativePathToFile, toRemove));
             }
             return relativePathToFile.substring(toRemove.length());
         }
@@ -142,9 +324,11 @@ public class BPBuildInfo extends BPBuildEnv {
     }
 
     public void println(final String message) {
-        if (listener != null) {
+        if (listener == null) return;
+        if (consoleBuffered)
+            getConsoleBuffer().println(consoleMsgPrefix + message);
+        else
             listener.getLogger().println(consoleMsgPrefix + message);
-        }
     }
 
     public void printIfVerbose(final String message) {
@@ -153,6 +337,31 @@ public class BPBuildInfo extends BPBuildEnv {
         }
     }
 
+    /**
+     * Print a verbose line about a single file, which is left out when verboseSummary prints one line for each directory instead
+     */
+    public void printFileIfVerbose(final String message) {
+        if (verbose && !summarizing) {
+            println(message);
+        }
+    }
+
+    /**
+     * Write out any console lines that are still buffered
+     */
+    public void flushConsole() {
+        final BPConsoleBuffer buffer;
+        synchronized (this) {
+            buffer = consoleBuffer;
+        }
+        if (buffer != null) buffer.flush();
+    }
+
+    private synchronized BPConsoleBuffer getConsoleBuffer() {
+        if (consoleBuffer == null) consoleBuffer = new BPConsoleBuffer(listener.getLogger());
+        return consoleBuffer;
+    }
+
     public String toString() {
         return addToToString(new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE))
             .append("currentBuildEnv", currentBuildEnv)
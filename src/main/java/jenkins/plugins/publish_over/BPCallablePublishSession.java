@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.remoting.ProxyException;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs all the selected publishers of a build on the agent in one call, so the build info and its environment are only sent
+ * once. Console output goes straight back through the listener, and the outcome of each publisher is sent to the controller
+ * through the session listener as soon as it finishes, as well as being returned in order at the end.
+ * Without continueOnError the session stops at the first publisher that fails.
+ */
+public class BPCallablePublishSession extends MasterToSlaveFileCallable<ArrayList<BPCallablePublishSession.Outcome>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(BPCallablePublishSession.class.getName());
+
+    private final ArrayList<BapPublisher> publishers;
+    private final ArrayList<BPHostConfiguration> hostConfigs;
+    private final BPBuildInfo buildInfo;
+    private final boolean continueOnError;
+    @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "exported over the channel when the session runs on an agent")
+    private final Listener listener;
+
+    public BPCallablePublishSession(final List<? extends BapPublisher> publishers, final List<BPHostConfiguration> hostConfigs,
+                                    final BPBuildInfo buildInfo, final boolean continueOnError, final Listener listener) {
+        this.publishers = new ArrayList<BapPublisher>(publishers);
+        this.hostConfigs = new ArrayList<BPHostConfiguration>(hostConfigs);
+        this.buildInfo = buildInfo;
+        this.continueOnError = continueOnError;
+        this.listener = listener;
+    }
+
+    public ArrayList<Outcome> invoke(final File file, final VirtualChannel channel) {
+        BPCallablePublisher.printHostName(buildInfo);
+        final ArrayList<Outcome> outcomes = new ArrayList<Outcome>();
+        for (int i = 0; i < publishers.size(); i++) {
+            final BapPublisher publisher = publishers.get(i);
+            publisher.setEffectiveEnvironmentInBuildInfo(buildInfo);
+            final int metricsBefore = buildInfo.getPublisherMetrics().size();
+            started(i);
+            Outcome outcome;
+            try {
+                publisher.perform(hostConfigs.get(i), buildInfo);
+                outcome = new Outcome(null, newMetrics(metricsBefore));
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, Messages.exception_remoteCallException(e.getLocalizedMessage()), e);
+                outcome = new Outcome(e, newMetrics(metricsBefore));
+            }
+            outcomes.add(outcome);
+            published(i, outcome);
+            if (!continueOnError && !outcome.isSuccess()) break;
+        }
+        return outcomes;
+    }
+
+    private void started(final int index) {
+        if (listener == null) return;
+        try {
+            listener.started(index);
+        } catch (RuntimeException re) {
+            // the controller then treats the publisher as never run if the session fails
+            LOGGER.log(Level.WARNING, re.getLocalizedMessage(), re);
+        }
+    }
+
+    private void published(final int index, final Outcome outcome) {
+        if (listener == null) return;
+        try {
+            listener.published(index, outcome);
+        } catch (RuntimeException re) {
+            // the controller picks up the outcome from the result of the call instead
+            LOGGER.log(Level.WARNING, re.getLocalizedMessage(), re);
+        }
+    }
+
+    private ArrayList<BPPublisherMetrics> newMetrics(final int before) {
+        final ArrayList<BPPublisherMetrics> all = buildInfo.getPublisherMetrics();
+        return new ArrayList<BPPublisherMetrics>(all.subList(before, all.size()));
+    }
+
+    /**
+     * Told on the controller about each publisher as soon as it finishes, so that it does not have to wait for the whole
+     * session. Exported over the channel when the session runs on an agent.
+     */
+    public interface Listener {
+
+        /**
+         * Told before the publisher runs, so that if the session fails the controller knows which publishers were never run
+         */
+        void started(int index);
+
+        void published(int index, Outcome outcome);
+
+    }
+
+    /**
+     * What happened to one publisher, reduced to what the controller needs so that the exception itself, whose classes the
+     * controller may not have, does not have to be sent back. Its stack trace and causes come back as a ProxyException, so
+     * that they are logged on the controller with the failure.
+     */
+    public static final class Outcome implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String failure;
+        private final ProxyException cause;
+        private final boolean connectFailure;
+        private final ArrayList<BPPublisherMetrics> metrics;
+
+        Outcome(final Exception exception, final ArrayList<BPPublisherMetrics> metrics) {
+            failure = exception == null ? null : Messages.exception_remoteCallException(exception.getLocalizedMessage());
+            cause = exception == null ? null : new ProxyException(exception);
+            connectFailure = exception != null && BapConnectException.isConnectFailure(exception);
+            this.metrics = metrics;
+        }
+
+        public boolean isSuccess() { return failure == null; }
+
+        public String getFailure() { return failure; }
+
+        public boolean isConnectFailure() { return connectFailure; }
+
+        public List<BPPublisherMetrics> getMetrics() { return metrics; }
+
+        /**
+         * @return the failure as an exception for the controller side, null if the publisher succeeded
+         */
+        public Exception toException() {
+            if (failure == null) return null;
+            final BapPublisherException exception = new BapPublisherException(failure, cause);
+            return connectFailure ? new BapConnectException(exception) : exception;
+        }
+
+    }
+
+}
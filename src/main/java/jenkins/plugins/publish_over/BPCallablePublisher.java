@@ -34,7 +34,11 @@ import java.net.UnknownHostException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class BPCallablePublisher extends MasterToSlaveFileCallable<Void> {
+/**
+ * Runs one publisher where the files are, and returns the outcome of the publish to the controller. A failure is returned
+ * rather than thrown, so that the metrics of a publish that failed part way through still reach the controller.
+ */
+public class BPCallablePublisher extends MasterToSlaveFileCallable<BPCallablePublishSession.Outcome> {
 
     private static final long serialVersionUID = 1L;
 
@@ -58,19 +62,18 @@ public class BPCallablePublisher extends MasterToSlaveFileCallable<Void> {
     public BPBuildInfo getBuildInfo() { return buildInfo; }
     public void setBuildInfo(final BPBuildInfo buildInfo) { this.buildInfo = buildInfo; }
 
-    public Void invoke(final File file, final VirtualChannel channel) throws IOException {
+    public BPCallablePublishSession.Outcome invoke(final File file, final VirtualChannel channel) throws IOException {
         try {
-            printHostName();
+            printHostName(buildInfo);
             publisher.perform(hostConfig, buildInfo);
         } catch (Exception e) {
-            final String message = Messages.exception_remoteCallException(e.getLocalizedMessage());
-            LOGGER.log(Level.WARNING, message, e);
-            throw new BapPublisherException(message, e);
+            LOGGER.log(Level.WARNING, Messages.exception_remoteCallException(e.getLocalizedMessage()), e);
+            return new BPCallablePublishSession.Outcome(e, buildInfo.getPublisherMetrics());
         }
-        return null;
+        return new BPCallablePublishSession.Outcome(null, buildInfo.getPublisherMetrics());
     }
 
-    private void printHostName() {
+    static void printHostName(final BPBuildInfo buildInfo) {
         try {
             buildInfo.println(Messages.console_publishFromHost_message(InetAddress.getLocalHost().getHostName()));
         } catch (UnknownHostException uhe) {
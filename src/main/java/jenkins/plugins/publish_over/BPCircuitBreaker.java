@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Controller wide circuit breaker for a host configuration, shared by every build that publishes to it.
+ * After circuitBreakerThreshold consecutive publishes fail to connect within circuitBreakerWindow, the breaker opens and
+ * publishes fail straight away. Once circuitBreakerOpenTime has passed, one publish is let through as a probe, and its
+ * outcome closes or re-opens the breaker.
+ */
+public final class BPCircuitBreaker {
+
+    public static final long DEFAULT_WINDOW = 300000;
+    public static final long DEFAULT_OPEN_TIME = 60000;
+    private static final ConcurrentMap<String, BPCircuitBreaker> BREAKERS = new ConcurrentHashMap<String, BPCircuitBreaker>();
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * @return the breaker for the configuration, or null if it does not use one or has no name to share it under
+     */
+    public static BPCircuitBreaker get(final BPHostConfiguration hostConfig) {
+        final String name = hostConfig.getName();
+        if (name == null) return null;
+        if (hostConfig.getCircuitBreakerThreshold() <= 0) {
+            BREAKERS.remove(name);
+            return null;
+        }
+        BPCircuitBreaker breaker = BREAKERS.get(name);
+        if (breaker == null) {
+            final BPCircuitBreaker created = new BPCircuitBreaker(name);
+            breaker = BREAKERS.putIfAbsent(name, created);
+            if (breaker == null) breaker = created;
+        }
+        breaker.configure(hostConfig);
+        return breaker;
+    }
+
+    public static List<BPCircuitBreaker> getAll() {
+        final List<BPCircuitBreaker> all = new ArrayList<BPCircuitBreaker>(BREAKERS.values());
+        Collections.sort(all, new Comparator<BPCircuitBreaker>() {
+            public int compare(final BPCircuitBreaker first, final BPCircuitBreaker second) {
+                return first.name.compareTo(second.name);
+            }
+        });
+        return all;
+    }
+
+    static void clear() {
+        BREAKERS.clear();
+    }
+
+    private final String name;
+    private int threshold;
+    private long window;
+    private long openTime;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long firstFailure;
+    private long openedAt;
+    private boolean probing;
+    private String lastFailure;
+
+    private BPCircuitBreaker(final String name) {
+        this.name = name;
+    }
+
+    private synchronized void configure(final BPHostConfiguration hostConfig) {
+        threshold = hostConfig.getCircuitBreakerThreshold();
+        window = hostConfig.getCircuitBreakerWindow() > 0 ? hostConfig.getCircuitBreakerWindow() : DEFAULT_WINDOW;
+        openTime = hostConfig.getCircuitBreakerOpenTime() > 0 ? hostConfig.getCircuitBreakerOpenTime() : DEFAULT_OPEN_TIME;
+    }
+
+    public String getName() { return name; }
+
+    public synchronized State getState() { return state; }
+
+    public synchronized int getConsecutiveFailures() { return consecutiveFailures; }
+
+    public synchronized String getLastFailure() { return lastFailure; }
+
+    /**
+     * @return milliseconds until a probe will be allowed, 0 unless the breaker is open
+     */
+    public synchronized long getRemainingOpenTime() {
+        return state == State.OPEN ? Math.max(0, openedAt + openTime - System.currentTimeMillis()) : 0;
+    }
+
+    /**
+     * Call before connecting
+     * @throws BapPublisherException if the breaker is open, or another publish is already probing the host
+     */
+    public synchronized void beforePublish(final BPBuildInfo buildInfo) {
+        if (state == State.OPEN && getRemainingOpenTime() == 0) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.HALF_OPEN && !probing) {
+            probing = true;
+            buildInfo.println(Messages.console_circuitBreaker_probe(name));
+            return;
+        }
+        if (state != State.CLOSED)
+            throw new BapPublisherException(Messages.exception_circuitOpen(name, consecutiveFailures, getRemainingOpenTime(), lastFailure));
+    }
+
+    /**
+     * Call when a publish that was let through by beforePublish did not run after all, so that it is not left as the probe
+     */
+    public synchronized void cancelPublish() {
+        probing = false;
+    }
+
+    /**
+     * Call after the publish, with the exception that it failed with, or null if it succeeded. Only a failure to connect counts
+     * against the host; any other outcome shows that it can be reached.
+     */
+    public synchronized void afterPublish(final BPBuildInfo buildInfo, final Exception failure) {
+        if (failure == null || !BapConnectException.isConnectFailure(failure)) {
+            if (state != State.CLOSED)
+                buildInfo.println(Messages.console_circuitBreaker_closed(name));
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            probing = false;
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        lastFailure = failure.getLocalizedMessage();
+        if (consecutiveFailures == 0 || now - firstFailure > window) {
+            consecutiveFailures = 0;
+            firstFailure = now;
+        }
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= threshold) {
+            if (state != State.OPEN)
+                buildInfo.println(Messages.console_circuitBreaker_opened(name, consecutiveFailures, openTime));
+            state = State.OPEN;
+            openedAt = now;
+            probing = false;
+        }
+    }
+
+}
@@ -56,4 +56,11 @@ public interface BPClient<TRANSFER extends BPTransfer> {
 
     void disconnectQuietly();
 
+    /**
+     * @return false if the session is known to be broken and a new connection is needed before anything else can be sent
+     */
+    default boolean isConnected() {
+        return true;
+    }
+
 }
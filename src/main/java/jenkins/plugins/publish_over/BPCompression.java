@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+public enum BPCompression {
+
+    GZIP(".gz"),
+    DEFLATE(".zz");
+
+    public static final int SAMPLE_SIZE = 8192;
+    private static final double MIN_SAMPLE_SAVING = 0.1;
+    private static final String[] COMPRESSED_EXTENSIONS = {
+        "7z", "apk", "bz2", "ear", "gif", "gz", "jar", "jpeg", "jpg", "lz", "lz4", "lzma", "mp3", "mp4", "png", "rar", "rpm",
+        "tbz", "tgz", "txz", "war", "webp", "xz", "z", "zip", "zst", "zz",
+    };
+    private static final byte[][] COMPRESSED_MAGIC = {
+        { 0x1f, (byte) 0x8b },                                  // gzip
+        { 0x50, 0x4b, 0x03, 0x04 },                             // zip, jar, war ...
+        { (byte) 0x89, 0x50, 0x4e, 0x47 },                      // png
+        { (byte) 0xff, (byte) 0xd8, (byte) 0xff },              // jpeg
+        { 0x42, 0x5a, 0x68 },                                   // bzip2
+        { (byte) 0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00 },          // xz
+        { 0x37, 0x7a, (byte) 0xbc, (byte) 0xaf, 0x27, 0x1c },   // 7z
+        { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd },               // zstd
+        { 0x52, 0x61, 0x72, 0x21 },                             // rar
+    };
+
+    private final String extension;
+
+    BPCompression(final String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public CompressingInputStream compress(final InputStream source) {
+        return new CompressingInputStream(source, this == GZIP);
+    }
+
+    public static boolean hasCompressedExtension(final String fileName) {
+        final int dot = fileName.lastIndexOf('.');
+        if (dot == -1) return false;
+        final String fileExtension = fileName.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+        return Arrays.binarySearch(COMPRESSED_EXTENSIONS, fileExtension) >= 0;
+    }
+
+    /**
+     * Decide from the first block of a file whether it is worth compressing
+     */
+    public static boolean isCompressible(final byte[] sample, final int length) {
+        if (length == 0) return false;
+        for (byte[] magic : COMPRESSED_MAGIC)
+            if (startsWith(sample, length, magic)) return false;
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            final byte[] discard = new byte[length];
+            while (!deflater.finished() && deflater.getBytesWritten() < length)
+                deflater.deflate(discard);
+            return deflater.getBytesWritten() < length * (1 - MIN_SAMPLE_SAVING);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static boolean startsWith(final byte[] sample, final int length, final byte[] magic) {
+        if (length < magic.length) return false;
+        for (int i = 0; i < magic.length; i++)
+            if (sample[i] != magic[i]) return false;
+        return true;
+    }
+
+    public static int readSample(final InputStream source, final byte[] sample) throws IOException {
+        int read = 0;
+        while (read < sample.length) {
+            final int count = source.read(sample, read, sample.length - read);
+            if (count == -1) break;
+            read += count;
+        }
+        return read;
+    }
+
+}
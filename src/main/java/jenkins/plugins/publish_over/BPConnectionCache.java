@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import jenkins.security.MasterToSlaveCallable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Connections kept open between the publishers of one build, so that publishers using the same host configuration and
+ * credentials only connect once. The cache lives in the JVM that runs the publishers and is found through the connection
+ * cache id in the BPBuildInfo, so that it survives between the remote calls made for each publisher. Only clients that
+ * implement BPReusableClient are kept, and they are bound to the publisher that takes them.
+ */
+final class BPConnectionCache {
+
+    private static final ConcurrentMap<String, BPConnectionCache> CACHES = new ConcurrentHashMap<String, BPConnectionCache>();
+
+    /**
+     * @return the cache for the build, or null if the build does not reuse connections
+     */
+    static BPConnectionCache forBuild(final BPBuildInfo buildInfo) {
+        final String id = buildInfo.getConnectionCacheId();
+        if (id == null) return null;
+        BPConnectionCache cache = CACHES.get(id);
+        if (cache == null) {
+            final BPConnectionCache created = new BPConnectionCache();
+            cache = CACHES.putIfAbsent(id, created);
+            if (cache == null) cache = created;
+        }
+        return cache;
+    }
+
+    static void close(final String id) {
+        final BPConnectionCache cache = CACHES.remove(id);
+        if (cache != null) cache.closeAll();
+    }
+
+    private final Map<BPConnectionKey, BPReusableClient> idle = new HashMap<BPConnectionKey, BPReusableClient>();
+
+    private BPConnectionCache() { }
+
+    /**
+     * @return an open connection for the key, bound to the build and publisher, or null if there is none that still reports
+     * being connected
+     */
+    BPClient take(final BPConnectionKey key, final BPBuildInfo buildInfo, final BapPublisher publisher) {
+        final BPReusableClient client;
+        synchronized (this) {
+            client = idle.remove(key);
+        }
+        if (client == null) return null;
+        if (client.isConnected()) {
+            client.bind(buildInfo, publisher);
+            return client;
+        }
+        client.disconnectQuietly();
+        return null;
+    }
+
+    /**
+     * Keep a connection for the next publisher, after returning it to its initial directory without holding the lock
+     * @return false if the connection could not be kept and should be disconnected
+     */
+    boolean put(final BPConnectionKey key, final BPClient client) {
+        if (!(client instanceof BPReusableClient)) return false;
+        synchronized (this) {
+            if (idle.containsKey(key)) return false;
+        }
+        if (!client.changeToInitialDirectory()) return false;
+        synchronized (this) {
+            if (idle.containsKey(key)) return false;
+            idle.put(key, (BPReusableClient) client);
+            return true;
+        }
+    }
+
+    private void closeAll() {
+        final List<BPClient> clients;
+        synchronized (this) {
+            clients = new ArrayList<BPClient>(idle.values());
+            idle.clear();
+        }
+        for (BPClient client : clients)
+            client.disconnectQuietly();
+    }
+
+    /**
+     * Disconnects the connections kept for a build, in the JVM where they were opened
+     */
+    static final class Closer extends MasterToSlaveCallable<Void, RuntimeException> {
+
+        private static final long serialVersionUID = 1L;
+        private final String id;
+
+        Closer(final String id) {
+            this.id = id;
+        }
+
+        public Void call() {
+            close(id);
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+
+/**
+ * Identifies connections that can be used in place of each other - same host configuration name and same credentials. Changes
+ * to a configuration are found by comparing it with the one a pool was configured from, see BPConnectionPool
+ */
+final class BPConnectionKey {
+
+    private final String configName;
+    private final Credentials credentials;
+
+    BPConnectionKey(final BPHostConfiguration hostConfig, final Credentials credentials) {
+        this.configName = hostConfig.getName();
+        this.credentials = credentials;
+    }
+
+    String getConfigName() { return configName; }
+
+    public boolean equals(final Object that) {
+        if (this == that) return true;
+        if (that == null || getClass() != that.getClass()) return false;
+        final BPConnectionKey other = (BPConnectionKey) that;
+        return new EqualsBuilder().append(configName, other.configName).append(credentials, other.credentials).isEquals();
+    }
+
+    public int hashCode() {
+        return new HashCodeBuilder().append(configName).append(credentials).toHashCode();
+    }
+
+}
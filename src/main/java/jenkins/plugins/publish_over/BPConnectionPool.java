@@ -0,0 +1,312 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM wide pool of open connections for one host configuration and set of credentials, shared by every build that publishes
+ * from this JVM. Connections are checked with isConnected when borrowed and changed back to their initial directory when
+ * returned. Idle connections are closed after poolIdleTimeout, and every connection is closed once it is older than
+ * poolMaxLifetime. At most poolSize connections are open at once - connections borrowed beyond that are closed when returned.
+ * <p>
+ * Only clients that implement BPReusableClient are kept, and they are bound to the build and publisher that borrows them.
+ * Pools are found by host configuration name and credentials. When the configuration under that name changes, the
+ * connections opened from the old configuration are closed, and pools that have been empty for longer than their idle
+ * timeout - such as those for configurations that have been removed - are dropped.
+ */
+public final class BPConnectionPool {
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+    public static final long DEFAULT_MAX_LIFETIME = 600000;
+    private static final long SWEEP_INTERVAL = 30000;
+    private static final ConcurrentMap<BPConnectionKey, BPConnectionPool> POOLS = new ConcurrentHashMap<BPConnectionKey, BPConnectionPool>();
+    private static ScheduledExecutorService sweeper;
+
+    /**
+     * @return the pool for the configuration and credentials, or null if the configuration does not pool connections
+     */
+    static BPConnectionPool get(final BPHostConfiguration hostConfig, final Credentials credentials) {
+        if (hostConfig.getPoolSize() <= 0) return null;
+        final BPConnectionKey key = new BPConnectionKey(hostConfig, credentials);
+        while (true) {
+            BPConnectionPool pool = POOLS.get(key);
+            if (pool == null) {
+                final BPConnectionPool created = new BPConnectionPool(key.getConfigName());
+                pool = POOLS.putIfAbsent(key, created);
+                if (pool == null) {
+                    pool = created;
+                    startSweeper();
+                }
+            }
+            // a pool dropped by the sweeper, or for a removed configuration, is replaced with a fresh one
+            if (pool.configure(hostConfig)) return pool;
+        }
+    }
+
+    /**
+     * Close the connections for a host configuration that no longer exists, in this JVM
+     */
+    static void remove(final String configName) {
+        for (Map.Entry<BPConnectionKey, BPConnectionPool> entry : POOLS.entrySet()) {
+            final BPConnectionPool pool = entry.getValue();
+            if (pool.name.equals(configName)) pool.retire(entry.getKey(), true);
+        }
+    }
+
+    public static List<BPConnectionPool> getAll() {
+        final List<BPConnectionPool> all = new ArrayList<BPConnectionPool>(POOLS.values());
+        Collections.sort(all, new Comparator<BPConnectionPool>() {
+            public int compare(final BPConnectionPool first, final BPConnectionPool second) {
+                return first.name.compareTo(second.name);
+            }
+        });
+        return all;
+    }
+
+    static void clear() {
+        for (Map.Entry<BPConnectionKey, BPConnectionPool> entry : POOLS.entrySet())
+            entry.getValue().retire(entry.getKey(), true);
+    }
+
+    private static synchronized void startSweeper() {
+        if (sweeper != null) return;
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "publish-over connection pool sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                for (Map.Entry<BPConnectionKey, BPConnectionPool> entry : POOLS.entrySet())
+                    entry.getValue().retire(entry.getKey(), false);
+            }
+        }, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private final String name;
+    private final Deque<Entry> idle = new ArrayDeque<Entry>();
+    private BPHostConfiguration hostConfig;
+    private int generation;
+    private long lastUsed = System.currentTimeMillis();
+    private int maxSize;
+    private long idleTimeout;
+    private long maxLifetime;
+    private int leased;
+    private long created;
+    private long reused;
+    private long evicted;
+    private long discarded;
+    private boolean dead;
+
+    private BPConnectionPool(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return false if the pool has been dropped, so a new one is needed
+     */
+    private boolean configure(final BPHostConfiguration hostConfig) {
+        final List<BPClient> stale = new ArrayList<BPClient>();
+        synchronized (this) {
+            if (dead) return false;
+            // keeps the sweeper from dropping the pool before it is borrowed from
+            lastUsed = System.currentTimeMillis();
+            if (this.hostConfig != null && !this.hostConfig.equals(hostConfig)) {
+                generation++;
+                for (Entry entry : idle)
+                    stale.add(entry.client);
+                discarded += idle.size();
+                idle.clear();
+            }
+            this.hostConfig = hostConfig;
+            applySettings(hostConfig);
+        }
+        disconnect(stale);
+        return true;
+    }
+
+    private void applySettings(final BPHostConfiguration hostConfig) {
+        maxSize = hostConfig.getPoolSize();
+        idleTimeout = hostConfig.getPoolIdleTimeout() > 0 ? hostConfig.getPoolIdleTimeout() : DEFAULT_IDLE_TIMEOUT;
+        maxLifetime = hostConfig.getPoolMaxLifetime() > 0 ? hostConfig.getPoolMaxLifetime() : DEFAULT_MAX_LIFETIME;
+    }
+
+    public String getName() { return name; }
+
+    public synchronized int getMaxSize() { return maxSize; }
+
+    public synchronized int getIdle() { return idle.size(); }
+
+    public synchronized int getLeased() { return leased; }
+
+    public synchronized long getCreated() { return created; }
+
+    public synchronized long getReused() { return reused; }
+
+    public synchronized long getEvicted() { return evicted; }
+
+    public synchronized long getDiscarded() { return discarded; }
+
+    /**
+     * @return an idle connection that still reports being connected, bound to the build and publisher, or a new connection
+     * from the factory. Idle connections are taken out of the pool and counted as leased while they are checked, so that the
+     * check does not hold the lock
+     */
+    Lease borrow(final BPClientFactory factory, final BPBuildInfo buildInfo, final BapPublisher publisher) {
+        final List<BPClient> expired = new ArrayList<BPClient>();
+        synchronized (this) {
+            evictExpired(expired);
+            lastUsed = System.currentTimeMillis();
+        }
+        disconnect(expired);
+        while (true) {
+            final Entry entry;
+            final int entryGeneration;
+            synchronized (this) {
+                entry = idle.pollFirst();
+                if (entry == null) break;
+                leased++;
+                entryGeneration = generation;
+            }
+            if (entry.client.isConnected()) {
+                synchronized (this) {
+                    reused++;
+                }
+                ((BPReusableClient) entry.client).bind(buildInfo, publisher);
+                return new Lease(entry.client, entry.created, entryGeneration);
+            }
+            synchronized (this) {
+                leased--;
+                discarded++;
+            }
+            entry.client.disconnectQuietly();
+        }
+        final BPClient client = factory.createClient();
+        synchronized (this) {
+            leased++;
+            created++;
+            return new Lease(client, System.currentTimeMillis(), generation);
+        }
+    }
+
+    /**
+     * Return a borrowed connection. It is kept only if it can be rebound and used again, was opened from the current host
+     * configuration, the pool has not been dropped and there is room in it. The connection is changed back to its initial
+     * directory before the lock is taken
+     * @return true if the connection was kept
+     */
+    boolean release(final Lease lease, final boolean reusable) {
+        boolean keep = reusable && lease.client instanceof BPReusableClient && lease.client.changeToInitialDirectory();
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            leased--;
+            lastUsed = now;
+            keep = keep && !dead && now - lease.created < maxLifetime && lease.generation == generation
+                    && idle.size() + leased < maxSize;
+            if (keep) idle.addFirst(new Entry(lease.client, lease.created, now));
+        }
+        if (!keep) lease.client.disconnectQuietly();
+        return keep;
+    }
+
+    /**
+     * Close the expired connections, and drop the pool if it is empty and has not been used for longer than the idle timeout,
+     * or always when its configuration has been removed. The pool is marked dead while the lock is held, so that get replaces
+     * it rather than handing out a pool that is no longer registered
+     */
+    private void retire(final BPConnectionKey key, final boolean always) {
+        final List<BPClient> expired = new ArrayList<BPClient>();
+        synchronized (this) {
+            evictExpired(expired);
+            if (always) {
+                for (Entry entry : idle)
+                    expired.add(entry.client);
+                idle.clear();
+            }
+            if (always || idle.isEmpty() && leased == 0 && System.currentTimeMillis() - lastUsed >= idleTimeout) {
+                dead = true;
+                POOLS.remove(key, this);
+            }
+        }
+        disconnect(expired);
+    }
+
+    private void evictExpired(final List<BPClient> expired) {
+        final long now = System.currentTimeMillis();
+        for (Iterator<Entry> entries = idle.iterator(); entries.hasNext();) {
+            final Entry entry = entries.next();
+            if (now - entry.lastUsed >= idleTimeout || now - entry.created >= maxLifetime) {
+                entries.remove();
+                evicted++;
+                expired.add(entry.client);
+            }
+        }
+    }
+
+    private static void disconnect(final List<BPClient> clients) {
+        for (BPClient client : clients)
+            client.disconnectQuietly();
+    }
+
+    static final class Lease {
+        private final BPClient client;
+        private final long created;
+        private final int generation;
+        private Lease(final BPClient client, final long created, final int generation) {
+            this.client = client;
+            this.created = created;
+            this.generation = generation;
+        }
+        BPClient getClient() { return client; }
+    }
+
+    private static final class Entry {
+        private final BPClient client;
+        private final long created;
+        private final long lastUsed;
+        Entry(final BPClient client, final long created, final long lastUsed) {
+            this.client = client;
+            this.created = created;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+}
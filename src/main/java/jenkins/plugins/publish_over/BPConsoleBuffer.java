@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects console lines and writes them to the build log in batches, once enough have been collected or the oldest has
+ * waited long enough, so that a verbose publish from an agent does not make a remote write for every line.
+ * A batch is taken out of the buffer under its lock and written after the lock is released, so publishers adding lines are
+ * never held up by a slow console; batches are written one at a time, in order.
+ */
+public final class BPConsoleBuffer {
+
+    static final int FLUSH_SIZE = 8 * 1024;
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, BPConsoleBuffer.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final PrintStream console;
+    private final long flushIntervalMillis;
+    private final StringBuilder buffer = new StringBuilder();
+    private final Object writeLock = new Object();
+    private boolean flushScheduled;
+
+    public BPConsoleBuffer(final PrintStream console) {
+        this(console, FLUSH_INTERVAL_MILLIS);
+    }
+
+    BPConsoleBuffer(final PrintStream console, final long flushIntervalMillis) {
+        this.console = console;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public void println(final String line) {
+        final boolean full;
+        synchronized (this) {
+            buffer.append(line).append(System.lineSeparator());
+            full = buffer.length() >= FLUSH_SIZE;
+            if (!full && !flushScheduled) {
+                flushScheduled = true;
+                FLUSHER.schedule(new Runnable() {
+                    public void run() {
+                        flush();
+                    }
+                }, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) flush();
+    }
+
+    public void flush() {
+        synchronized (writeLock) {
+            final String batch;
+            synchronized (this) {
+                flushScheduled = false;
+                if (buffer.length() == 0) return;
+                batch = buffer.toString();
+                buffer.setLength(0);
+            }
+            console.print(batch);
+            console.flush();
+        }
+    }
+
+}
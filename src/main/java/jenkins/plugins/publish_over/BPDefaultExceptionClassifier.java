@@ -0,0 +1,59 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.nio.file.AccessDeniedException;
+import java.security.GeneralSecurityException;
+
+/**
+ * Treats configuration errors (BapPermanentException), rejected credentials (BapAuthenticationException), permission, security
+ * and interruption failures anywhere in the cause chain as permanent, and everything else as transient
+ */
+public class BPDefaultExceptionClassifier implements BPExceptionClassifier {
+
+    private static final Class<?>[] PERMANENT = {
+        BapPermanentException.class,
+        BapAuthenticationException.class,
+        AccessDeniedException.class,
+        GeneralSecurityException.class,
+        SecurityException.class,
+        InterruptedException.class,
+    };
+
+    public boolean isPermanent(final Exception exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (isPermanentType(cause)) return true;
+        }
+        return false;
+    }
+
+    protected boolean isPermanentType(final Throwable throwable) {
+        for (Class<?> type : PERMANENT) {
+            if (type.isInstance(throwable)) return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events for each phase of a publish, recorded in the JVM that does the work, which is the agent for the scan
+ * and for publishes made from an agent. Each event is started before the phase and finished after it, and finish only fills
+ * in the fields and commits when a recording is taking the event, so they cost almost nothing when nothing is recording.
+ */
+final class BPFlightEvents {
+
+    private static final String CATEGORY = "Publish Over";
+
+    private BPFlightEvents() { }
+
+    @Name("jenkins.plugins.publish_over.Scan")
+    @Label("Scan")
+    @Description("Find the source files of a transfer")
+    @Category({"Jenkins", CATEGORY})
+    @StackTrace(false)
+    static final class Scan extends Event {
+        @Label("Includes")
+        String includes;
+        @Label("Files")
+        int files;
+        @Label("Directories")
+        int directories;
+        @Label("Success")
+        boolean success;
+
+        void finish(final String includes, final int files, final int directories, final boolean success) {
+            end();
+            if (shouldCommit()) {
+                this.includes = includes;
+                this.files = files;
+                this.directories = directories;
+                this.success = success;
+                commit();
+            }
+        }
+    }
+
+    @Name("jenkins.plugins.publish_over.Connect")
+    @Label("Connect")
+    @Description("Connect to a host configuration, or take a connection from a pool or cache")
+    @Category({"Jenkins", CATEGORY})
+    @StackTrace(false)
+    static final class Connect extends Event {
+        @Label("Configuration")
+        String configName;
+        @Label("Success")
+        boolean success;
+
+        void finish(final String configName, final boolean success) {
+            end();
+            if (shouldCommit()) {
+                this.configName = configName;
+                this.success = success;
+                commit();
+            }
+        }
+    }
+
+    @Name("jenkins.plugins.publish_over.ChangeDirectory")
+    @Label("Change Directory")
+    @Category({"Jenkins", CATEGORY})
+    @StackTrace(false)
+    static final class ChangeDirectory extends Event {
+        @Label("Directory")
+        String directory;
+        @Label("Success")
+        boolean success;
+
+        void finish(final String directory, final boolean success) {
+            end();
+            if (shouldCommit()) {
+                this.directory = directory;
+                this.success = success;
+                commit();
+            }
+        }
+    }
+
+    @Name("jenkins.plugins.publish_over.MakeDirectory")
+    @Label("Make Directory")
+    @Category({"Jenkins", CATEGORY})
+    @StackTrace(false)
+    static final class MakeDirectory extends Event {
+        @Label("Directory")
+        String directory;
+        @Label("Success")
+        boolean success;
+
+        void finish(final String directory, final boolean success) {
+            end();
+            if (shouldCommit()) {
+                this.directory = directory;
+                this.success = success;
+                commit();
+            }
+        }
+    }
+
+    @Name("jenkins.plugins.publish_over.TransferFile")
+    @Label("Transfer File")
+    @Category({"Jenkins", CATEGORY})
+    @StackTrace(false)
+    static final class TransferFile extends Event {
+        @Label("File")
+        String path;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Success")
+        boolean success;
+
+        void finish(final String path, final long bytes, final boolean success) {
+            end();
+            if (shouldCommit()) {
+                this.path = path;
+                this.bytes = bytes;
+                this.success = success;
+                commit();
+            }
+        }
+    }
+
+    @Name("jenkins.plugins.publish_over.RetryDelay")
+    @Label("Retry Delay")
+    @Description("Wait before reconnecting after a failed attempt")
+    @Category({"Jenkins", CATEGORY})
+    @StackTrace(false)
+    static final class RetryDelay extends Event {
+        @Label("Configuration")
+        String configName;
+        @Label("Attempt")
+        int attempt;
+        @Label("Requested Delay")
+        @Timespan(Timespan.MILLISECONDS)
+        long delay;
+        @Label("Failure")
+        String failure;
+
+        void finish(final String configName, final int attempt, final long delay, final String failure) {
+            end();
+            if (shouldCommit()) {
+                this.configName = configName;
+                this.attempt = attempt;
+                this.delay = delay;
+                this.failure = failure;
+                commit();
+            }
+        }
+    }
+
+    @Name("jenkins.plugins.publish_over.Disconnect")
+    @Label("Disconnect")
+    @Category({"Jenkins", CATEGORY})
+    @StackTrace(false)
+    static final class Disconnect extends Event {
+        @Label("Configuration")
+        String configName;
+
+        void finish(final String configName) {
+            end();
+            if (shouldCommit()) {
+                this.configName = configName;
+                commit();
+            }
+        }
+    }
+
+}
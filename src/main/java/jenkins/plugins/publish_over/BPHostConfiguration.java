@@ -47,6 +47,14 @@ public abstract class BPHostConfiguration<CLIENT extends BPClient, COMMON_CONFIG
     private String remoteRootDir;
     private int port;
     private COMMON_CONFIG commonConfig;
+    private int circuitBreakerThreshold;
+    private long circuitBreakerWindow;
+    private long circuitBreakerOpenTime;
+    private int poolSize;
+    private long poolIdleTimeout;
+    private long poolMaxLifetime;
+    private int maxConcurrentSessions;
+    private int bandwidthLimit;
 
     public BPHostConfiguration() { }
 
@@ -92,12 +100,44 @@ public abstract class BPHostConfiguration<CLIENT extends BPClient, COMMON_CONFIG
     public COMMON_CONFIG getCommonConfig() { return commonConfig; }
     public void setCommonConfig(final COMMON_CONFIG commonConfig) { this.commonConfig = commonConfig; }
 
+    public int getCircuitBreakerThreshold() { return circuitBreakerThreshold; }
+    public void setCircuitBreakerThreshold(final int circuitBreakerThreshold) { this.circuitBreakerThreshold = circuitBreakerThreshold; }
+
+    public long getCircuitBreakerWindow() { return circuitBreakerWindow; }
+    public void setCircuitBreakerWindow(final long circuitBreakerWindow) { this.circuitBreakerWindow = circuitBreakerWindow; }
+
+    public long getCircuitBreakerOpenTime() { return circuitBreakerOpenTime; }
+    public void setCircuitBreakerOpenTime(final long circuitBreakerOpenTime) { this.circuitBreakerOpenTime = circuitBreakerOpenTime; }
+
+    public int getPoolSize() { return poolSize; }
+    public void setPoolSize(final int poolSize) { this.poolSize = poolSize; }
+
+    public long getPoolIdleTimeout() { return poolIdleTimeout; }
+    public void setPoolIdleTimeout(final long poolIdleTimeout) { this.poolIdleTimeout = poolIdleTimeout; }
+
+    public long getPoolMaxLifetime() { return poolMaxLifetime; }
+    public void setPoolMaxLifetime(final long poolMaxLifetime) { this.poolMaxLifetime = poolMaxLifetime; }
+
+    public int getMaxConcurrentSessions() { return maxConcurrentSessions; }
+    public void setMaxConcurrentSessions(final int maxConcurrentSessions) { this.maxConcurrentSessions = maxConcurrentSessions; }
+
+    public int getBandwidthLimit() { return bandwidthLimit; }
+    public void setBandwidthLimit(final int bandwidthLimit) { this.bandwidthLimit = bandwidthLimit; }
+
     public CLIENT createClient(final BPBuildInfo buildInfo, final BapPublisher publisher) {
         return createClient(buildInfo);
     }
 
     public abstract CLIENT createClient(BPBuildInfo buildInfo);
 
+    /**
+     * Override to change which failures are retried for publishers using this configuration. This is the only classifier asked
+     * when the first client cannot be created, so it should recognise the connection failures of the protocol library.
+     */
+    public BPExceptionClassifier getExceptionClassifier() {
+        return new BPDefaultExceptionClassifier();
+    }
+
     protected boolean isDirectoryAbsolute(final String directory) {
         if ((directory == null) || (directory.length() < 1))
             return false;
@@ -123,7 +163,15 @@ public abstract class BPHostConfiguration<CLIENT extends BPClient, COMMON_CONFIG
             .append(secretPassword)
             .append(remoteRootDir)
             .append(commonConfig)
-            .append(port);
+            .append(port)
+            .append(circuitBreakerThreshold)
+            .append(circuitBreakerWindow)
+            .append(circuitBreakerOpenTime)
+            .append(poolSize)
+            .append(poolIdleTimeout)
+            .append(poolMaxLifetime)
+            .append(maxConcurrentSessions)
+            .append(bandwidthLimit);
     }
 
     protected EqualsBuilder addToEquals(final EqualsBuilder builder, final BPHostConfiguration that) {
@@ -133,7 +181,15 @@ public abstract class BPHostConfiguration<CLIENT extends BPClient, COMMON_CONFIG
             .append(secretPassword, that.secretPassword)
             .append(remoteRootDir, that.remoteRootDir)
             .append(commonConfig, that.commonConfig)
-            .append(port, that.port);
+            .append(port, that.port)
+            .append(circuitBreakerThreshold, that.circuitBreakerThreshold)
+            .append(circuitBreakerWindow, that.circuitBreakerWindow)
+            .append(circuitBreakerOpenTime, that.circuitBreakerOpenTime)
+            .append(poolSize, that.poolSize)
+            .append(poolIdleTimeout, that.poolIdleTimeout)
+            .append(poolMaxLifetime, that.poolMaxLifetime)
+            .append(maxConcurrentSessions, that.maxConcurrentSessions)
+            .append(bandwidthLimit, that.bandwidthLimit);
     }
 
     protected ToStringBuilder addToToString(final ToStringBuilder builder) {
@@ -142,7 +198,15 @@ public abstract class BPHostConfiguration<CLIENT extends BPClient, COMMON_CONFIG
             .append("username", username)
             .append("remoteRootDir", remoteRootDir)
             .append("commonConfig", commonConfig)
-            .append("port", port);
+            .append("port", port)
+            .append("circuitBreakerThreshold", circuitBreakerThreshold)
+            .append("circuitBreakerWindow", circuitBreakerWindow)
+            .append("circuitBreakerOpenTime", circuitBreakerOpenTime)
+            .append("poolSize", poolSize)
+            .append("poolIdleTimeout", poolIdleTimeout)
+            .append("poolMaxLifetime", poolMaxLifetime)
+            .append("maxConcurrentSessions", maxConcurrentSessions)
+            .append("bandwidthLimit", bandwidthLimit);
     }
 
     public boolean equals(final Object that) {
@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controller wide totals for one host configuration, added up from the BPPublisherMetrics of every publish to it, including
+ * publishes that ran on an agent and returned their metrics with the result. Each host configuration is registered as an
+ * MXBean named jenkins.plugins.publish_over:type=HostMetrics,name=&lt;configuration name&gt; the first time it is used.
+ */
+public final class BPHostMetrics implements BPHostMetricsMXBean {
+
+    static final String DOMAIN = "jenkins.plugins.publish_over";
+    private static final Log LOG = LogFactory.getLog(BPHostMetrics.class);
+    private static final ConcurrentMap<String, BPHostMetrics> METRICS = new ConcurrentHashMap<String, BPHostMetrics>();
+
+    static BPHostMetrics get(final String configName) {
+        BPHostMetrics metrics = METRICS.get(configName);
+        if (metrics == null) {
+            final BPHostMetrics created = new BPHostMetrics(configName);
+            metrics = METRICS.putIfAbsent(configName, created);
+            if (metrics == null) {
+                metrics = created;
+                metrics.register();
+            }
+        }
+        return metrics;
+    }
+
+    public static List<BPHostMetrics> getAll() {
+        final List<BPHostMetrics> all = new ArrayList<BPHostMetrics>(METRICS.values());
+        Collections.sort(all, new Comparator<BPHostMetrics>() {
+            public int compare(final BPHostMetrics first, final BPHostMetrics second) {
+                return first.configName.compareTo(second.configName);
+            }
+        });
+        return all;
+    }
+
+    static void recordAll(final Collection<BPPublisherMetrics> publisherMetrics) {
+        for (BPPublisherMetrics metrics : publisherMetrics)
+            get(metrics.getConfigName()).record(metrics);
+    }
+
+    static void clear() {
+        for (BPHostMetrics metrics : METRICS.values())
+            metrics.unregister();
+        METRICS.clear();
+    }
+
+    static ObjectName getObjectName(final String configName) throws JMException {
+        return new ObjectName(DOMAIN + ":type=HostMetrics,name=" + ObjectName.quote(configName));
+    }
+
+    private final String configName;
+    private final AtomicLong publishes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong transferMillis = new AtomicLong();
+    private final AtomicLong lastBytesPerSecond = new AtomicLong();
+    private final Map<BPPublisherMetrics.Operation, BPLatencyHistogram> latencies =
+            new EnumMap<BPPublisherMetrics.Operation, BPLatencyHistogram>(BPPublisherMetrics.Operation.class);
+
+    private BPHostMetrics(final String configName) {
+        this.configName = configName;
+        for (BPPublisherMetrics.Operation operation : BPPublisherMetrics.Operation.values())
+            latencies.put(operation, new BPLatencyHistogram());
+    }
+
+    void record(final BPPublisherMetrics metrics) {
+        publishes.incrementAndGet();
+        if (!metrics.isSuccess()) failures.incrementAndGet();
+        retries.addAndGet(metrics.getRetries());
+        files.addAndGet(metrics.getFiles());
+        bytes.addAndGet(metrics.getBytes());
+        transferMillis.addAndGet(metrics.getTransferMillis());
+        if (metrics.getBytes() > 0) lastBytesPerSecond.set(metrics.getBytesPerSecond());
+        for (Map.Entry<BPPublisherMetrics.Operation, BPLatencyHistogram> entry : metrics.getLatencies().entrySet())
+            latencies.get(entry.getKey()).add(entry.getValue());
+    }
+
+    private void register() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName(configName);
+            if (!server.isRegistered(name)) server.registerMBean(this, name);
+        } catch (JMException jme) {
+            LOG.warn(Messages.log_metricsMBeanFailed(configName, jme.getLocalizedMessage()), jme);
+        }
+    }
+
+    private void unregister() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName(configName);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException jme) {
+            LOG.warn(Messages.log_metricsMBeanFailed(configName, jme.getLocalizedMessage()), jme);
+        }
+    }
+
+    private BPLatencyHistogram getLatency(final BPPublisherMetrics.Operation operation) {
+        final BPLatencyHistogram copy = new BPLatencyHistogram();
+        copy.add(latencies.get(operation));
+        return copy;
+    }
+
+    public String getConfigName() { return configName; }
+
+    public long getPublishes() { return publishes.get(); }
+
+    public long getFailures() { return failures.get(); }
+
+    public long getRetries() { return retries.get(); }
+
+    public long getFiles() { return files.get(); }
+
+    public long getBytes() { return bytes.get(); }
+
+    public long getTransferMillis() { return transferMillis.get(); }
+
+    /**
+     * @return the average rate over every publish to this host configuration
+     */
+    public long getBytesPerSecond() { return BPTransferMetrics.bytesPerSecond(bytes.get(), transferMillis.get()); }
+
+    /**
+     * @return the rate of the most recent publish that transferred anything
+     */
+    public long getLastBytesPerSecond() { return lastBytesPerSecond.get(); }
+
+    public long[] getLatencyBucketBounds() { return BPLatencyHistogram.getBucketBounds(); }
+
+    public BPLatencyHistogram getConnectLatency() { return getLatency(BPPublisherMetrics.Operation.CONNECT); }
+
+    public BPLatencyHistogram getChangeDirectoryLatency() { return getLatency(BPPublisherMetrics.Operation.CHANGE_DIRECTORY); }
+
+    public BPLatencyHistogram getMakeDirectoryLatency() { return getLatency(BPPublisherMetrics.Operation.MAKE_DIRECTORY); }
+
+    public BPLatencyHistogram getTransferFileLatency() { return getLatency(BPPublisherMetrics.Operation.TRANSFER_FILE); }
+
+    public BPLatencyHistogram getDisconnectLatency() { return getLatency(BPPublisherMetrics.Operation.DISCONNECT); }
+
+}
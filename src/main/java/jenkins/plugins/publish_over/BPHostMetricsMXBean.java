@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+/**
+ * What BPHostMetrics exports through JMX. Each latency histogram appears as composite data holding the count in each bucket
+ * and the totals. The bucket bounds, in milliseconds, are the same for every histogram, so they are given once by
+ * getLatencyBucketBounds.
+ */
+public interface BPHostMetricsMXBean {
+
+    String getConfigName();
+
+    long getPublishes();
+
+    long getFailures();
+
+    long getRetries();
+
+    long getFiles();
+
+    long getBytes();
+
+    long getTransferMillis();
+
+    long getBytesPerSecond();
+
+    long getLastBytesPerSecond();
+
+    long[] getLatencyBucketBounds();
+
+    BPLatencyHistogram getConnectLatency();
+
+    BPLatencyHistogram getChangeDirectoryLatency();
+
+    BPLatencyHistogram getMakeDirectoryLatency();
+
+    BPLatencyHistogram getTransferFileLatency();
+
+    BPLatencyHistogram getDisconnectLatency();
+
+}
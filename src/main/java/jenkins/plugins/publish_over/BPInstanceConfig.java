@@ -32,6 +32,21 @@ import org.apache.commons.lang.builder.ToStringStyle;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,6 +66,11 @@ public class BPInstanceConfig<PUBLISHER extends BapPublisher> implements Seriali
     private String masterNodeName;
     private BPHostConfigurationAccess hostConfigurationAccess;
     private ParamPublish paramPublish;
+    private boolean reuseConnections;
+    private int parallelism;
+    private boolean publishInOneSession;
+    private boolean sendUsedEnvVarsOnly;
+    private boolean writeTrace;
 
     public BPInstanceConfig() { }
 
@@ -93,6 +113,27 @@ public class BPInstanceConfig<PUBLISHER extends BapPublisher> implements Seriali
         this.hostConfigurationAccess = hostConfigurationAccess;
     }
 
+    public boolean isReuseConnections() { return reuseConnections; }
+    public void setReuseConnections(final boolean reuseConnections) { this.reuseConnections = reuseConnections; }
+
+    public int getParallelism() { return parallelism; }
+    public void setParallelism(final int parallelism) { this.parallelism = parallelism; }
+
+    /**
+     * Ignored when parallelism is more than one, as each server is then sent to the agent in its own call
+     */
+    public boolean isPublishInOneSession() { return publishInOneSession; }
+    public void setPublishInOneSession(final boolean publishInOneSession) { this.publishInOneSession = publishInOneSession; }
+
+    public boolean isSendUsedEnvVarsOnly() { return sendUsedEnvVarsOnly; }
+    public void setSendUsedEnvVarsOnly(final boolean sendUsedEnvVarsOnly) { this.sendUsedEnvVarsOnly = sendUsedEnvVarsOnly; }
+
+    /**
+     * @return true to write a line of JSON for every operation of the publish to BPTrace.FILE_NAME in the build directory
+     */
+    public boolean isWriteTrace() { return writeTrace; }
+    public void setWriteTrace(final boolean writeTrace) { this.writeTrace = writeTrace; }
+
     public ParamPublish getParamPublish() {
         return paramPublish;
     }
@@ -102,8 +143,10 @@ public class BPInstanceConfig<PUBLISHER extends BapPublisher> implements Seriali
 
     public BPHostConfiguration getConfiguration(final String configName) {
         final BPHostConfiguration config = hostConfigurationAccess.getConfiguration(configName);
-        if (config == null)
-            throw new BapPublisherException(Messages.exception_failedToFindConfiguration(configName));
+        if (config == null) {
+            BPConnectionPool.remove(configName);
+            throw new BapPermanentException(Messages.exception_failedToFindConfiguration(configName));
+        }
         return config;
     }
 
@@ -129,28 +172,387 @@ public class BPInstanceConfig<PUBLISHER extends BapPublisher> implements Seriali
             buildInfo.getListener().error(bpe.getLocalizedMessage());
             return onError;
         }
+        if (reuseConnections) buildInfo.setConnectionCacheId(UUID.randomUUID().toString());
+        if (sendUsedEnvVarsOnly) buildInfo.setEnvVarsToSend(BPMacroScanner.findVariables(publishers));
+        try {
+            if (parallelism > 1) {
+                if (publishInOneSession && !alwaysPublishFromMaster)
+                    buildInfo.println(Messages.console_oneSessionIgnored(parallelism));
+                return performParallel(buildInfo, selector, onError);
+            }
+            if (publishInOneSession && !alwaysPublishFromMaster)
+                return performInOneSession(buildInfo, selector, onError);
+            for (PUBLISHER publisher : publishers) {
+                publisher.setEffectiveEnvironmentInBuildInfo(buildInfo);
+                if (!selector.selected(publisher)) continue;
+                try {
+                    publish(publisher, getConfiguration(publisher.getConfigName()), buildInfo);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, Messages.log_exceptionInPerform(), e);
+                    buildInfo.getListener().error(e.getLocalizedMessage());
+                    if (continueOnError)
+                        toReturn = toReturn.combine(onError);
+                    else
+                        return onError;
+                }
+            }
+        } finally {
+            if (reuseConnections) closeConnections(buildInfo);
+            buildInfo.flushConsole();
+        }
+        return toReturn;
+    }
+
+    /**
+     * Run up to parallelism publishers at once, each with its own copy of the build info. When continueOnError is not set,
+     * the first failure cancels the publishers that have not started yet. Publishers that are already running are left to
+     * finish, so that no upload is cut off half way through, and their failures are reported too.
+     */
+    private Result performParallel(final BPBuildInfo buildInfo, final PubSelector selector, final Result onError) {
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final PUBLISHER publisher : publishers) {
+            final BPBuildInfo publisherInfo = buildInfo.copy(
+                    Messages.console_publisherPrefix(buildInfo.getConsoleMsgPrefix(), publisher.getConfigName()));
+            publisher.setEffectiveEnvironmentInBuildInfo(publisherInfo);
+            if (!selector.selected(publisher)) continue;
+            tasks.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    publish(publisher, getConfiguration(publisher.getConfigName()), publisherInfo);
+                    return null;
+                }
+            });
+        }
+        if (tasks.isEmpty()) return Result.SUCCESS;
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+        final CompletionService<Void> completion = new ExecutorCompletionService<Void>(executor);
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        Result toReturn = Result.SUCCESS;
+        try {
+            for (Callable<Void> task : tasks)
+                futures.add(completion.submit(task));
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    completion.take().get();
+                } catch (CancellationException ce) {
+                    // not started, as an earlier publisher failed
+                } catch (ExecutionException ee) {
+                    final Throwable e = ee.getCause();
+                    LOGGER.log(Level.WARNING, Messages.log_exceptionInPerform(), e);
+                    buildInfo.getListener().error(e.getLocalizedMessage());
+                    toReturn = toReturn.combine(onError);
+                    if (!continueOnError) {
+                        for (Future<Void> future : futures)
+                            future.cancel(false);
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            // the build has been aborted, so stop the running publishers too, and wait for them to close their connections
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException again) {
+                // aborted again, so give up waiting
+            }
+            Thread.currentThread().interrupt();
+            return onError;
+        } finally {
+            executor.shutdown();
+        }
+        return toReturn;
+    }
+
+    /**
+     * Send every selected publisher to the agent in one call. The host configurations, circuit breakers and session limits
+     * are all dealt with here on the controller, before the session and as the agent reports each publisher finishing.
+     */
+    private Result performInOneSession(final BPBuildInfo buildInfo, final PubSelector selector, final Result onError) {
+        Result toReturn = Result.SUCCESS;
+        final List<PUBLISHER> selected = new ArrayList<PUBLISHER>();
+        final List<BPHostConfiguration> hostConfigs = new ArrayList<BPHostConfiguration>();
+        final List<BPCircuitBreaker> breakers = new ArrayList<BPCircuitBreaker>();
+        Exception stoppedBy = null;
         for (PUBLISHER publisher : publishers) {
             publisher.setEffectiveEnvironmentInBuildInfo(buildInfo);
             if (!selector.selected(publisher)) continue;
             try {
                 final BPHostConfiguration hostConfig = getConfiguration(publisher.getConfigName());
-                final BPCallablePublisher callablePublisher = new BPCallablePublisher(publisher, hostConfig, buildInfo);
-                if (alwaysPublishFromMaster)
-                    callablePublisher.invoke(null, null);
-                else
-                    buildInfo.getBaseDirectory().act(callablePublisher);
+                final BPCircuitBreaker breaker = BPCircuitBreaker.get(hostConfig);
+                if (breaker != null) breaker.beforePublish(buildInfo);
+                selected.add(publisher);
+                hostConfigs.add(hostConfig);
+                breakers.add(breaker);
+            } catch (BapPublisherException bpe) {
+                if (!continueOnError) {
+                    stoppedBy = bpe;
+                    break;
+                }
+                reportFailure(buildInfo, bpe);
+                toReturn = toReturn.combine(onError);
+            }
+        }
+        if (!selected.isEmpty()) {
+            final SessionProgress progress = new SessionProgress(buildInfo, hostConfigs, breakers, onError);
+            try {
+                progress.acquire(acquireSessions(hostConfigs, buildInfo));
+                if (progress.isLimited()) buildInfo.setSessionPermits(createSessionPermits(buildInfo));
+                buildInfo.setBandwidthGrants(createBandwidthGrants(buildInfo, hostConfigs));
+                final BPCallablePublishSession session = new BPCallablePublishSession(selected, hostConfigs, buildInfo,
+                        continueOnError, exportListener(buildInfo, progress));
+                progress.finish(buildInfo.getBaseDirectory().act(session));
             } catch (Exception e) {
-                LOGGER.log(Level.WARNING, Messages.log_exceptionInPerform(), e);
-                buildInfo.getListener().error(e.getLocalizedMessage());
-                if (continueOnError)
-                    toReturn = toReturn.combine(onError);
-                else
-                    return onError;
+                progress.fail(e);
+                return onError;
+            } finally {
+                buildInfo.setSessionPermits(null);
+                buildInfo.setBandwidthGrants(null);
+                progress.releaseAll();
             }
+            toReturn = toReturn.combine(progress.getResult());
+            if (!continueOnError && progress.getResult() != Result.SUCCESS) return onError;
+        }
+        if (stoppedBy != null) {
+            reportFailure(buildInfo, stoppedBy);
+            return onError;
         }
         return toReturn;
     }
 
+    /**
+     * Take a session from the limit of each host configuration in the session, in name order so that two builds with the same
+     * hosts cannot each hold one that the other is waiting for
+     */
+    private List<BPSessionLimiter> acquireSessions(final List<BPHostConfiguration> hostConfigs, final BPBuildInfo buildInfo) {
+        final Map<String, BPSessionLimiter> byName = new TreeMap<String, BPSessionLimiter>();
+        for (BPHostConfiguration hostConfig : hostConfigs) {
+            final BPSessionLimiter limiter = BPSessionLimiter.get(hostConfig);
+            if (limiter != null) byName.put(limiter.getName(), limiter);
+        }
+        final List<BPSessionLimiter> acquired = new ArrayList<BPSessionLimiter>();
+        try {
+            for (BPSessionLimiter limiter : byName.values()) {
+                limiter.acquire(buildInfo);
+                acquired.add(limiter);
+            }
+        } catch (BapPublisherException bpe) {
+            for (BPSessionLimiter limiter : acquired)
+                limiter.release();
+            throw bpe;
+        }
+        return acquired;
+    }
+
+    /**
+     * Sessions for the other connections of a publish are always taken here on the controller, so the permits are exported to
+     * the agent when the publish runs there
+     */
+    private BPSessionPermits createSessionPermits(final BPBuildInfo buildInfo) {
+        final BPSessionPermits permits = BPSessionLimiter.createPermits();
+        if (alwaysPublishFromMaster || !buildInfo.getBaseDirectory().isRemote()) return permits;
+        return buildInfo.getBaseDirectory().getChannel().export(BPSessionPermits.class, permits);
+    }
+
+    /**
+     * The bandwidth buckets are on the controller too, so an agent is sent grants from them when any of the host configurations
+     * has a limit
+     * @return the grants, or null if the publish runs here or has no bandwidth limit
+     */
+    private BPBandwidthGrants createBandwidthGrants(final BPBuildInfo buildInfo, final List<BPHostConfiguration> hostConfigs) {
+        if (alwaysPublishFromMaster || !buildInfo.getBaseDirectory().isRemote()) return null;
+        boolean limited = false;
+        for (BPHostConfiguration hostConfig : hostConfigs)
+            limited |= BPBandwidthLimiter.get(hostConfig) != null;
+        if (!limited) return null;
+        return buildInfo.getBaseDirectory().getChannel().export(BPBandwidthGrants.class, BPBandwidthLimiter.createGrants());
+    }
+
+    private BPCallablePublishSession.Listener exportListener(final BPBuildInfo buildInfo,
+                                                             final BPCallablePublishSession.Listener listener) {
+        if (!buildInfo.getBaseDirectory().isRemote()) return listener;
+        return buildInfo.getBaseDirectory().getChannel().export(BPCallablePublishSession.Listener.class, listener);
+    }
+
+    /**
+     * Metrics collected on an agent come back with the result of the call. When the call ran in this JVM, the publishers have
+     * already added them to the build info.
+     */
+    private static void addRemoteMetrics(final BPBuildInfo buildInfo, final Collection<BPPublisherMetrics> metrics) {
+        if (buildInfo.getBaseDirectory().isRemote()) buildInfo.addPublisherMetrics(metrics);
+    }
+
+    /**
+     * Deals with each publisher of a session on the controller as soon as the agent says that it has finished - the circuit
+     * breaker is told, the metrics are added, a failure is reported, and the session for a host configuration is released once
+     * the last publisher to it is done rather than when the whole session ends. Outcomes that did not arrive through the
+     * listener are picked up from the result of the call.
+     */
+    private final class SessionProgress implements BPCallablePublishSession.Listener {
+
+        private final BPBuildInfo buildInfo;
+        private final List<BPHostConfiguration> hostConfigs;
+        private final List<BPCircuitBreaker> breakers;
+        private final Result onError;
+        private final boolean[] started;
+        private final boolean[] done;
+        private final Map<String, BPSessionLimiter> limiters = new TreeMap<String, BPSessionLimiter>();
+        private final Map<String, Integer> remaining = new TreeMap<String, Integer>();
+        private Result result = Result.SUCCESS;
+
+        SessionProgress(final BPBuildInfo buildInfo, final List<BPHostConfiguration> hostConfigs,
+                        final List<BPCircuitBreaker> breakers, final Result onError) {
+            this.buildInfo = buildInfo;
+            this.hostConfigs = hostConfigs;
+            this.breakers = breakers;
+            this.onError = onError;
+            started = new boolean[hostConfigs.size()];
+            done = new boolean[hostConfigs.size()];
+        }
+
+        synchronized void acquire(final List<BPSessionLimiter> acquired) {
+            for (BPSessionLimiter limiter : acquired)
+                limiters.put(limiter.getName(), limiter);
+            for (BPHostConfiguration hostConfig : hostConfigs) {
+                final Integer count = remaining.get(hostConfig.getName());
+                remaining.put(hostConfig.getName(), count == null ? 1 : count + 1);
+            }
+        }
+
+        synchronized boolean isLimited() { return !limiters.isEmpty(); }
+
+        synchronized Result getResult() { return result; }
+
+        public synchronized void started(final int index) {
+            if (index >= 0 && index < started.length) started[index] = true;
+        }
+
+        public synchronized void published(final int index, final BPCallablePublishSession.Outcome outcome) {
+            if (index < 0 || index >= done.length || done[index]) return;
+            final Exception failure = outcome.toException();
+            if (breakers.get(index) != null) breakers.get(index).afterPublish(buildInfo, failure);
+            addRemoteMetrics(buildInfo, outcome.getMetrics());
+            if (failure != null && outcome.getMetrics().isEmpty()) addFailedMetrics(buildInfo, hostConfigs.get(index).getName());
+            if (failure != null) {
+                reportFailure(buildInfo, failure);
+                result = result.combine(onError);
+            }
+            finished(index);
+        }
+
+        /**
+         * Pick up any outcome that the listener missed, and let the breakers of publishers that were never run go
+         */
+        synchronized void finish(final List<BPCallablePublishSession.Outcome> outcomes) {
+            for (int i = 0; i < outcomes.size(); i++)
+                published(i, outcomes.get(i));
+            for (int i = outcomes.size(); i < done.length; i++) {
+                if (done[i]) continue;
+                if (breakers.get(i) != null) breakers.get(i).cancelPublish();
+                finished(i);
+            }
+        }
+
+        /**
+         * The session itself failed, so every publisher that has not reported is failed with it. Only the breakers of those
+         * that had started are told of the failure; those that were never run let their breakers go
+         */
+        synchronized void fail(final Exception failure) {
+            for (int i = 0; i < done.length; i++) {
+                if (done[i]) continue;
+                if (breakers.get(i) != null) {
+                    if (started[i])
+                        breakers.get(i).afterPublish(buildInfo, failure);
+                    else
+                        breakers.get(i).cancelPublish();
+                }
+                addFailedMetrics(buildInfo, hostConfigs.get(i).getName());
+                finished(i);
+            }
+            reportFailure(buildInfo, failure);
+            result = result.combine(onError);
+        }
+
+        synchronized void releaseAll() {
+            for (BPSessionLimiter limiter : limiters.values())
+                limiter.release();
+            limiters.clear();
+        }
+
+        private void finished(final int index) {
+            done[index] = true;
+            final String name = hostConfigs.get(index).getName();
+            final Integer count = remaining.get(name);
+            if (count == null) return;
+            if (count > 1) {
+                remaining.put(name, count - 1);
+                return;
+            }
+            remaining.remove(name);
+            final BPSessionLimiter limiter = limiters.remove(name);
+            if (limiter != null) limiter.release();
+        }
+
+    }
+
+    /**
+     * A publish that failed before it could collect metrics of its own still counts as a failed publish to the host
+     */
+    private static void addFailedMetrics(final BPBuildInfo buildInfo, final String configName) {
+        buildInfo.addPublisherMetrics(Collections.singletonList(new BPPublisherMetrics(configName)));
+    }
+
+    private void reportFailure(final BPBuildInfo buildInfo, final Exception failure) {
+        LOGGER.log(Level.WARNING, Messages.log_exceptionInPerform(), failure);
+        buildInfo.getListener().error(failure.getLocalizedMessage());
+    }
+
+    private void closeConnections(final BPBuildInfo buildInfo) {
+        final BPConnectionCache.Closer closer = new BPConnectionCache.Closer(buildInfo.getConnectionCacheId());
+        buildInfo.setConnectionCacheId(null);
+        try {
+            if (alwaysPublishFromMaster)
+                closer.call();
+            else
+                buildInfo.getBaseDirectory().act(closer);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, Messages.log_exceptionClosingConnections(), e);
+        }
+    }
+
+    private void publish(final PUBLISHER publisher, final BPHostConfiguration hostConfig, final BPBuildInfo buildInfo)
+            throws Exception {
+        final BPCircuitBreaker breaker = BPCircuitBreaker.get(hostConfig);
+        if (breaker != null) breaker.beforePublish(buildInfo);
+        final BPSessionLimiter limiter = BPSessionLimiter.get(hostConfig);
+        boolean acquired = false;
+        boolean returned = false;
+        Exception failure = null;
+        try {
+            if (limiter != null) {
+                limiter.acquire(buildInfo);
+                acquired = true;
+                buildInfo.setSessionPermits(createSessionPermits(buildInfo));
+            }
+            buildInfo.setBandwidthGrants(createBandwidthGrants(buildInfo, Collections.singletonList(hostConfig)));
+            final BPCallablePublisher callablePublisher = new BPCallablePublisher(publisher, hostConfig, buildInfo);
+            final BPCallablePublishSession.Outcome outcome = alwaysPublishFromMaster ? callablePublisher.invoke(null, null)
+                    : buildInfo.getBaseDirectory().act(callablePublisher);
+            returned = !outcome.getMetrics().isEmpty();
+            if (!alwaysPublishFromMaster) addRemoteMetrics(buildInfo, outcome.getMetrics());
+            if (!outcome.isSuccess()) throw outcome.toException();
+        } catch (Exception e) {
+            failure = e;
+            if (!returned) addFailedMetrics(buildInfo, hostConfig.getName());
+            throw e;
+        } finally {
+            buildInfo.setBandwidthGrants(null);
+            if (acquired) {
+                buildInfo.setSessionPermits(null);
+                limiter.release();
+            }
+            if (breaker != null) breaker.afterPublish(buildInfo, failure);
+        }
+    }
+
     private PubSelector createSelector(final BPBuildInfo buildInfo) {
         if (paramPublish == null)
             return SelectAllPubSelector.SELECT_ALL;
@@ -159,7 +561,9 @@ public class BPInstanceConfig<PUBLISHER extends BapPublisher> implements Seriali
 
     protected HashCodeBuilder addToHashCode(final HashCodeBuilder builder) {
         return builder.append(publishers).append(continueOnError).append(failOnError)
-            .append(alwaysPublishFromMaster).append(masterNodeName).append(paramPublish);
+            .append(alwaysPublishFromMaster).append(masterNodeName).append(paramPublish).append(reuseConnections)
+            .append(parallelism).append(publishInOneSession).append(sendUsedEnvVarsOnly)
+            .append(writeTrace);
     }
 
     protected EqualsBuilder addToEquals(final EqualsBuilder builder, final BPInstanceConfig that) {
@@ -168,7 +572,12 @@ public class BPInstanceConfig<PUBLISHER extends BapPublisher> implements Seriali
             .append(failOnError, that.failOnError)
             .append(masterNodeName, that.masterNodeName)
             .append(alwaysPublishFromMaster, that.alwaysPublishFromMaster)
-            .append(paramPublish, that.paramPublish);
+            .append(paramPublish, that.paramPublish)
+            .append(reuseConnections, that.reuseConnections)
+            .append(parallelism, that.parallelism)
+            .append(publishInOneSession, that.publishInOneSession)
+            .append(sendUsedEnvVarsOnly, that.sendUsedEnvVarsOnly)
+            .append(writeTrace, that.writeTrace);
     }
 
     protected ToStringBuilder addToToString(final ToStringBuilder builder) {
@@ -177,7 +586,12 @@ public class BPInstanceConfig<PUBLISHER extends BapPublisher> implements Seriali
             .append("failOnError", failOnError)
             .append("masterNodeName", masterNodeName)
             .append("alwaysPublishFromMaster", alwaysPublishFromMaster)
-            .append("paramPublish", paramPublish);
+            .append("paramPublish", paramPublish)
+            .append("reuseConnections", reuseConnections)
+            .append("parallelism", parallelism)
+            .append("publishInOneSession", publishInOneSession)
+            .append("sendUsedEnvVarsOnly", sendUsedEnvVarsOnly)
+            .append("writeTrace", writeTrace);
     }
 
     public boolean equals(final Object that) {
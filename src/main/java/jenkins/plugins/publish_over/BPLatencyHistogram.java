@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts how long an operation took in fixed buckets, so that histograms from any number of publishes, on the controller or
+ * on agents, can be added together without keeping the samples
+ */
+public class BPLatencyHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Upper bounds, in milliseconds, of every bucket but the last, which counts everything slower
+     */
+    static final long[] BUCKET_BOUNDS = {1, 5, 10, 50, 100, 500, 1000, 5000, 10000, 60000};
+
+    private final long[] counts = new long[BUCKET_BOUNDS.length + 1];
+    private long count;
+    private long totalMillis;
+    private long maxMillis;
+
+    public static long[] getBucketBounds() {
+        return BUCKET_BOUNDS.clone();
+    }
+
+    public synchronized void record(final long nanos) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket])
+            bucket++;
+        counts[bucket]++;
+        count++;
+        totalMillis += millis;
+        maxMillis = Math.max(maxMillis, millis);
+    }
+
+    public void add(final BPLatencyHistogram other) {
+        final long[] otherCounts;
+        final long otherCount;
+        final long otherTotal;
+        final long otherMax;
+        synchronized (other) {
+            otherCounts = other.counts.clone();
+            otherCount = other.count;
+            otherTotal = other.totalMillis;
+            otherMax = other.maxMillis;
+        }
+        synchronized (this) {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] += otherCounts[i];
+            count += otherCount;
+            totalMillis += otherTotal;
+            maxMillis = Math.max(maxMillis, otherMax);
+        }
+    }
+
+    public synchronized long[] getCounts() { return counts.clone(); }
+
+    public synchronized long getCount() { return count; }
+
+    public synchronized long getTotalMillis() { return totalMillis; }
+
+    public synchronized long getMaxMillis() { return maxMillis; }
+
+    public synchronized double getMeanMillis() { return count == 0 ? 0 : (double) totalMillis / count; }
+
+    public synchronized String toString() {
+        return "count=" + count + ", mean=" + getMeanMillis() + ", max=" + maxMillis + ", buckets=" + Arrays.toString(counts);
+    }
+
+}
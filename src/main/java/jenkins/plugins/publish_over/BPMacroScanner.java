@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the names of the variables that a publisher's configuration refers to, by walking the fields of the publisher and of
+ * any object that it holds from a publish over plugin, and looking for $NAME and ${NAME} in every string
+ */
+final class BPMacroScanner {
+
+    private static final Pattern MACRO = Pattern.compile("\\$([A-Za-z0-9_]+|\\{([^}]+)\\})");
+    private static final String PACKAGE_PREFIX = "jenkins.plugins.publish_over";
+
+    private BPMacroScanner() { }
+
+    static Set<String> findVariables(final Collection<?> roots) {
+        final Set<String> names = new TreeSet<String>();
+        final Map<Object, Object> visited = new IdentityHashMap<Object, Object>();
+        for (Object root : roots)
+            scan(root, names, visited);
+        return names;
+    }
+
+    private static void scan(final Object value, final Set<String> names, final Map<Object, Object> visited) {
+        if (value == null || visited.put(value, value) != null) return;
+        if (value instanceof String) {
+            final Matcher matcher = MACRO.matcher((String) value);
+            while (matcher.find())
+                names.add(matcher.group(2) == null ? matcher.group(1) : matcher.group(2));
+        } else if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value)
+                scan(element, names, visited);
+        } else if (value instanceof Map) {
+            for (Object element : ((Map<?, ?>) value).values())
+                scan(element, names, visited);
+        } else if (value.getClass().isArray() && !value.getClass().getComponentType().isPrimitive()) {
+            for (int i = 0; i < Array.getLength(value); i++)
+                scan(Array.get(value, i), names, visited);
+        } else if (value.getClass().getName().startsWith(PACKAGE_PREFIX)) {
+            for (Class<?> type = value.getClass(); type != null && type.getName().startsWith(PACKAGE_PREFIX);
+                    type = type.getSuperclass())
+                scanFields(value, type, names, visited);
+        }
+    }
+
+    private static void scanFields(final Object value, final Class<?> type, final Set<String> names,
+                                   final Map<Object, Object> visited) {
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+            try {
+                field.setAccessible(true);
+                scan(field.get(value), names, visited);
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new BapPublisherException(Messages.exception_scanVariables(type.getName(), field.getName()), e);
+            }
+        }
+    }
+
+}
@@ -43,6 +43,7 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeMap;
 
 @SuppressWarnings({ "PMD.LooseCoupling", "PMD.TooManyMethods" }) // serializable ... Map ...
@@ -123,7 +124,17 @@ public abstract class BPPlugin<PUBLISHER extends BapPublisher, CLIENT extends BP
         final BPBuildInfo buildInfo = new BPBuildInfo(listener, consolePrefix, jenkins.getRootPath(),
                                                       currentBuildEnv, targetBuildEnv);
         fixup(build, buildInfo);
-        final Result result = delegate.perform(buildInfo);
+        final BPTrace trace = delegate.isWriteTrace() ? BPTrace.open(build.getRootDir()) : null;
+        buildInfo.setTrace(trace);
+        final Result result;
+        try {
+            result = delegate.perform(buildInfo);
+        } finally {
+            if (trace != null) trace.close();
+        }
+        final List<BPPublisherMetrics> metrics = buildInfo.getPublisherMetrics();
+        if (!metrics.isEmpty()) BPPublishMetricsAction.addTo(build, metrics);
+        BPHostMetrics.recordAll(metrics);
 
         Result buildRes = build.getResult();
 
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.model.Api;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The metrics of every publisher that ran in a build, shown on a page of the build and available from its remote API.
+ * Each publish step of the build adds its publishers to the same action.
+ */
+@ExportedBean
+public class BPPublishMetricsAction implements RunAction2 {
+
+    private static final Log LOG = LogFactory.getLog(BPPublishMetricsAction.class);
+
+    private final List<BPPublisherMetrics> publishers = new ArrayList<BPPublisherMetrics>();
+    private transient Run<?, ?> run;
+
+    public BPPublishMetricsAction(final Collection<BPPublisherMetrics> publishers) {
+        this.publishers.addAll(publishers);
+    }
+
+    /**
+     * Add the metrics to the action of the build, creating it if this is the first publish step to finish, and save the build
+     * so that the metrics are kept when the step runs after the build has completed, for example in a promotion
+     */
+    public static void addTo(final Run<?, ?> run, final Collection<BPPublisherMetrics> publishers) {
+        synchronized (run) {
+            final BPPublishMetricsAction action = run.getAction(BPPublishMetricsAction.class);
+            if (action == null)
+                run.addAction(new BPPublishMetricsAction(publishers));
+            else
+                action.add(publishers);
+        }
+        try {
+            run.save();
+        } catch (IOException ioe) {
+            LOG.warn(Messages.log_metricsActionSaveFailed(run.getFullDisplayName(), ioe.getLocalizedMessage()), ioe);
+        }
+    }
+
+    public String getIconFileName() {
+        return "symbol-cloud-upload";
+    }
+
+    public String getDisplayName() {
+        return Messages.metricsAction_displayName();
+    }
+
+    public String getUrlName() {
+        return "publish-over-metrics";
+    }
+
+    public void onAttached(final Run<?, ?> run) {
+        this.run = run;
+    }
+
+    public void onLoad(final Run<?, ?> run) {
+        this.run = run;
+    }
+
+    public Run<?, ?> getRun() { return run; }
+
+    public Api getApi() { return new Api(this); }
+
+    @Exported(inline = true)
+    public synchronized List<BPPublisherMetrics> getPublishers() { return new ArrayList<BPPublisherMetrics>(publishers); }
+
+    private synchronized void add(final Collection<BPPublisherMetrics> more) {
+        publishers.addAll(more);
+    }
+
+}
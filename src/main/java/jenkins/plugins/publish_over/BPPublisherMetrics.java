@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What one publisher did, collected while it runs, on the agent when it publishes from one, and returned to the controller
+ * to be attached to the build
+ */
+@ExportedBean
+public class BPPublisherMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The client operations whose latency is recorded in a histogram
+     */
+    public enum Operation { CONNECT, CHANGE_DIRECTORY, MAKE_DIRECTORY, TRANSFER_FILE, DISCONNECT }
+
+    private final String configName;
+    private final ArrayList<BPTransferMetrics> transfers = new ArrayList<BPTransferMetrics>();
+    private long connectMillis;
+    private int retries;
+    private boolean success;
+    private final EnumMap<Operation, BPLatencyHistogram> latencies = new EnumMap<Operation, BPLatencyHistogram>(Operation.class);
+
+    public BPPublisherMetrics(final String configName) {
+        this.configName = configName;
+    }
+
+    @Exported
+    public String getConfigName() { return configName; }
+
+    @Exported(inline = true)
+    public synchronized List<BPTransferMetrics> getTransfers() { return new ArrayList<BPTransferMetrics>(transfers); }
+
+    /**
+     * @return the time spent connecting, over every attempt
+     */
+    @Exported
+    public synchronized long getConnectMillis() { return connectMillis; }
+
+    /**
+     * @return the number of times the publisher reconnected, or retried a file on the same connection, after a failure
+     */
+    @Exported
+    public synchronized int getRetries() { return retries; }
+
+    @Exported
+    public synchronized boolean isSuccess() { return success; }
+
+    @Exported
+    public synchronized int getFiles() {
+        int files = 0;
+        for (BPTransferMetrics transfer : transfers)
+            files += transfer.getFiles();
+        return files;
+    }
+
+    @Exported
+    public synchronized long getBytes() {
+        long bytes = 0;
+        for (BPTransferMetrics transfer : transfers)
+            bytes += transfer.getBytes();
+        return bytes;
+    }
+
+    @Exported
+    public synchronized long getTransferMillis() {
+        long millis = 0;
+        for (BPTransferMetrics transfer : transfers)
+            millis += transfer.getTransferMillis();
+        return millis;
+    }
+
+    @Exported
+    public long getBytesPerSecond() { return BPTransferMetrics.bytesPerSecond(getBytes(), getTransferMillis()); }
+
+    /**
+     * @return a copy of the histogram for every operation that was recorded at least once
+     */
+    public synchronized Map<Operation, BPLatencyHistogram> getLatencies() {
+        final Map<Operation, BPLatencyHistogram> copy = new EnumMap<Operation, BPLatencyHistogram>(Operation.class);
+        for (Map.Entry<Operation, BPLatencyHistogram> entry : latencies.entrySet()) {
+            final BPLatencyHistogram histogram = new BPLatencyHistogram();
+            histogram.add(entry.getValue());
+            copy.put(entry.getKey(), histogram);
+        }
+        return copy;
+    }
+
+    void record(final Operation operation, final long nanos) {
+        BPLatencyHistogram histogram;
+        synchronized (this) {
+            histogram = latencies.get(operation);
+            if (histogram == null) {
+                histogram = new BPLatencyHistogram();
+                latencies.put(operation, histogram);
+            }
+        }
+        histogram.record(nanos);
+    }
+
+    synchronized void addTransfer(final BPTransferMetrics transfer) { transfers.add(transfer); }
+
+    synchronized void addConnectMillis(final long millis) { connectMillis += millis; }
+
+    synchronized void retried() { retries++; }
+
+    synchronized void setSuccess(final boolean success) { this.success = success; }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.io.InputStream;
+
+/**
+ * Optional capability for clients that can read remote files and write into them at a given position
+ */
+public interface BPRandomAccessClient<TRANSFER extends BPTransfer> extends BPClient<TRANSFER> {
+
+    /**
+     * Open a file in the current directory for reading
+     * @return the contents, or null if the file does not exist
+     */
+    @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+    InputStream readFile(String fileName) throws Exception;
+
+    /**
+     * Write content into a file in the current directory, starting at position, creating the file if it does not exist
+     */
+    @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+    void writeFile(TRANSFER transfer, String fileName, long position, InputStream content) throws Exception;
+
+    @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+    void truncateFile(String fileName, long length) throws Exception;
+
+}
@@ -0,0 +1,45 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+
+import java.io.InputStream;
+
+/**
+ * A client that can store content under a name other than that of the file it was read from, which compression needs to add
+ * the extension of the compressed format, and a hedged upload needs to write to a temporary name before renaming it into
+ * place. Compressed transfers to other clients send files as they are, and are not hedged.
+ */
+public interface BPRemoteNameClient<TRANSFER extends BPTransfer> extends BPClient<TRANSFER> {
+
+    /**
+     * @param filePath the local file that the content was read from
+     * @param remoteName the name to give the file in the current directory
+     */
+    @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+    void transferFile(TRANSFER transfer, FilePath filePath, String remoteName, InputStream fileContent) throws Exception;
+
+}
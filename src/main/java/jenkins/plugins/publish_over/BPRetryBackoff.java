@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.util.Random;
+
+/**
+ * How the delay between retries grows
+ */
+public enum BPRetryBackoff {
+
+    /** Always wait for the configured retry delay */
+    FIXED {
+        long nextDelay(final long baseDelay, final long previousDelay, final int attempt, final Random random) {
+            return baseDelay;
+        }
+    },
+
+    /** Double the delay after every attempt */
+    EXPONENTIAL {
+        long nextDelay(final long baseDelay, final long previousDelay, final int attempt, final Random random) {
+            final int doublings = Math.min(attempt - 1, MAX_DOUBLINGS);
+            return baseDelay > Long.MAX_VALUE >> doublings ? Long.MAX_VALUE : baseDelay << doublings;
+        }
+    },
+
+    /**
+     * Pick a random delay between the retry delay and three times the previous delay, so that builds that failed together
+     * do not all retry together
+     */
+    DECORRELATED_JITTER {
+        long nextDelay(final long baseDelay, final long previousDelay, final int attempt, final Random random) {
+            final long upper = previousDelay > Long.MAX_VALUE / 3 ? Long.MAX_VALUE : Math.max(baseDelay, previousDelay) * 3;
+            if (upper <= baseDelay) return baseDelay;
+            return baseDelay + (long) (random.nextDouble() * (upper - baseDelay));
+        }
+    };
+
+    private static final int MAX_DOUBLINGS = 30;
+
+    /**
+     * @param attempt the retry about to be made, starting at 1
+     * @param previousDelay the delay chosen before the previous retry, or 0 before the first retry
+     */
+    abstract long nextDelay(long baseDelay, long previousDelay, int attempt, Random random);
+
+}
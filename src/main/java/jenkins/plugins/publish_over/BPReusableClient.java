@@ -0,0 +1,40 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+/**
+ * A client that can be handed on to a publisher other than the one that connected it. Clients usually keep the BPBuildInfo
+ * and publisher they were created with, and write to that build's console and read its environment, so connections are only
+ * kept for reuse - between the publishers of a build or in the connection pool - if the client implements this.
+ */
+public interface BPReusableClient<TRANSFER extends BPTransfer> extends BPClient<TRANSFER> {
+
+    /**
+     * Called before the connection is used by another publisher. Everything the client reads from or writes to the build,
+     * and the settings it takes from the publisher, must come from these from now on
+     */
+    void bind(BPBuildInfo buildInfo, BapPublisher publisher);
+
+}
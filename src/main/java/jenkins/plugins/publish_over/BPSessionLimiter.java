@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller wide cap on the number of publishes to a host configuration that run at the same time, shared by every build.
+ * Publishes over the limit wait in a fair queue, so they connect in the order that they asked.
+ * The permit is taken on the controller around the whole publish, so it also covers publishes that run on an agent. It covers
+ * the first connection of the publish; every other connection that the publish opens takes a session of its own through
+ * BPSessionPermits.
+ */
+public final class BPSessionLimiter {
+
+    private static final ConcurrentMap<String, BPSessionLimiter> LIMITERS = new ConcurrentHashMap<String, BPSessionLimiter>();
+
+    /**
+     * @return the limiter for the configuration, or null if it does not limit concurrent sessions
+     */
+    public static BPSessionLimiter get(final BPHostConfiguration hostConfig) {
+        final String name = hostConfig.getName();
+        final int limit = hostConfig.getMaxConcurrentSessions();
+        if (limit <= 0) {
+            if (name != null) LIMITERS.remove(name);
+            return null;
+        }
+        while (true) {
+            final BPSessionLimiter limiter = LIMITERS.get(name);
+            if (limiter != null && limiter.limit == limit) return limiter;
+            // publishes holding a permit from a replaced limiter release it back to that one
+            final BPSessionLimiter created = new BPSessionLimiter(name, limit);
+            if (limiter == null ? LIMITERS.putIfAbsent(name, created) == null : LIMITERS.replace(name, limiter, created))
+                return created;
+        }
+    }
+
+    public static List<BPSessionLimiter> getAll() {
+        final List<BPSessionLimiter> all = new ArrayList<BPSessionLimiter>(LIMITERS.values());
+        Collections.sort(all, new Comparator<BPSessionLimiter>() {
+            public int compare(final BPSessionLimiter first, final BPSessionLimiter second) {
+                return first.name.compareTo(second.name);
+            }
+        });
+        return all;
+    }
+
+    static void clear() {
+        LIMITERS.clear();
+    }
+
+    /**
+     * @return permits for the other connections of a publish, taken from the limiters in this JVM
+     */
+    static BPSessionPermits createPermits() {
+        return new Permits();
+    }
+
+    private final String name;
+    private final int limit;
+    private final Semaphore sessions;
+
+    private BPSessionLimiter(final String name, final int limit) {
+        this.name = name;
+        this.limit = limit;
+        sessions = new Semaphore(limit, true);
+    }
+
+    public String getName() { return name; }
+
+    public int getLimit() { return limit; }
+
+    public int getActive() { return limit - sessions.availablePermits(); }
+
+    public int getQueued() { return sessions.getQueueLength(); }
+
+    /**
+     * Wait for a session, telling the console how long the publish was queued for
+     * @throws BapPublisherException if interrupted while waiting
+     */
+    public void acquire(final BPBuildInfo buildInfo) {
+        try {
+            if (tryAcquire()) return;
+            buildInfo.println(Messages.console_sessionQueued(name, limit, sessions.getQueueLength()));
+            final long start = System.currentTimeMillis();
+            sessions.acquire();
+            buildInfo.println(Messages.console_sessionAcquired(name, System.currentTimeMillis() - start));
+        } catch (InterruptedException ie) {
+            throw new BapPublisherException(Messages.exception_sessionWaitInterrupted(name), ie);
+        }
+    }
+
+    /**
+     * Take a session only if one is free and nobody is queued ahead - unlike Semaphore.tryAcquire(), a zero timeout respects
+     * the fair ordering
+     */
+    private boolean tryAcquire() throws InterruptedException {
+        return sessions.tryAcquire(0, TimeUnit.SECONDS);
+    }
+
+    public void release() {
+        sessions.release();
+    }
+
+    /**
+     * Remembers which limiter each session was taken from, as a limiter can be replaced while its sessions are held
+     */
+    private static final class Permits implements BPSessionPermits {
+
+        private final Map<String, Deque<BPSessionLimiter>> held = new HashMap<String, Deque<BPSessionLimiter>>();
+
+        public boolean tryAcquire(final String configName) {
+            final BPSessionLimiter limiter = LIMITERS.get(configName);
+            if (limiter == null) return true;
+            try {
+                if (!limiter.tryAcquire()) return false;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            synchronized (held) {
+                Deque<BPSessionLimiter> limiters = held.get(configName);
+                if (limiters == null) {
+                    limiters = new ArrayDeque<BPSessionLimiter>();
+                    held.put(configName, limiters);
+                }
+                limiters.push(limiter);
+            }
+            return true;
+        }
+
+        public void release(final String configName) {
+            final BPSessionLimiter limiter;
+            synchronized (held) {
+                final Deque<BPSessionLimiter> limiters = held.get(configName);
+                limiter = limiters == null ? null : limiters.poll();
+            }
+            if (limiter != null) limiter.release();
+        }
+
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+/**
+ * Sessions for the connections that a publish opens on top of the one covered by the session held for the whole publish -
+ * the other connections of a multipart or hedged upload, or of transfer sets that run in parallel. They are taken from the
+ * BPSessionLimiter on the controller; when the publish runs on an agent this is a proxy exported over the channel, so the
+ * connections opened there count against the same limit.
+ */
+public interface BPSessionPermits {
+
+    /**
+     * Never waits, as a publish that waited for another session while holding its own could deadlock with another doing the
+     * same
+     * @return true if the host configuration does not limit sessions, or a session was free and has been taken
+     */
+    boolean tryAcquire(String configName);
+
+    void release(String configName);
+
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+import java.util.List;
+
+/**
+ * Shows the controller wide state shared between publishes, such as the circuit breaker and session limit of each host
+ * configuration and the connection pools used by publishes from the controller
+ */
+@Extension
+public class BPStatusLink extends ManagementLink {
+
+    public String getIconFileName() {
+        return "symbol-computer";
+    }
+
+    public String getUrlName() {
+        return "publish-over";
+    }
+
+    public String getDisplayName() {
+        return Messages.statusLink_displayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.statusLink_description();
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.STATUS;
+    }
+
+    public List<BPCircuitBreaker> getCircuitBreakers() {
+        return BPCircuitBreaker.getAll();
+    }
+
+    public List<BPConnectionPool> getConnectionPools() {
+        return BPConnectionPool.getAll();
+    }
+
+    public List<BPSessionLimiter> getSessionLimiters() {
+        return BPSessionLimiter.getAll();
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.remoting.RemoteOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes one line of JSON for every operation of a publish to a file in the build directory. Records are put on a bounded
+ * queue and written by a pooled thread, so the publish never waits for the file - a record that does not fit in the queue
+ * is dropped, and the number dropped is written by the writer once it has caught up. Sent to an agent with the build info, the trace
+ * writes to the same file through the remote stream.
+ */
+public final class BPTrace implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String FILE_NAME = "publish-over-trace.ndjson";
+    public static final String SCAN = "scan";
+    public static final String CONNECT = "connect";
+    public static final String CHANGE_DIRECTORY = "changeDirectory";
+    public static final String MAKE_DIRECTORY = "makeDirectory";
+    public static final String TRANSFER_FILE = "transferFile";
+    public static final String RETRY_DELAY = "retryDelay";
+    public static final String DISCONNECT = "disconnect";
+    static final int CAPACITY = 4096;
+    private static final long FLUSH_TIMEOUT_MILLIS = 30000;
+    private static final Log LOG = LogFactory.getLog(BPTrace.class);
+
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, BPTrace.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final OutputStream out;
+    private transient BlockingQueue<Record> queue;
+    private transient AtomicLong dropped;
+    private transient boolean writing;
+    private transient volatile boolean closed;
+    private transient boolean closeWhenWritten;
+    private transient volatile boolean failed;
+    private transient Runnable writer;
+
+    BPTrace(final OutputStream out) {
+        this.out = out;
+        init();
+    }
+
+    /**
+     * @return a trace that appends to the trace file in the directory
+     */
+    public static BPTrace open(final File directory) throws IOException {
+        final OutputStream file = new BufferedOutputStream(new FileOutputStream(new File(directory, FILE_NAME), true));
+        return new BPTrace(new RemoteOutputStream(file));
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init();
+    }
+
+    private void init() {
+        queue = new ArrayBlockingQueue<Record>(CAPACITY);
+        dropped = new AtomicLong();
+        writer = new Runnable() {
+            public void run() {
+                write();
+            }
+        };
+    }
+
+    /**
+     * @param configName the host configuration, or null if not known
+     * @param path the directory or file operated on, or null
+     */
+    public void record(final String phase, final String configName, final String path, final long bytes, final long nanos,
+                       final boolean success) {
+        if (closed) return;
+        if (!queue.offer(new Record(System.currentTimeMillis(), phase, configName, path, bytes, nanos, success))) {
+            dropped.incrementAndGet();
+            return;
+        }
+        synchronized (this) {
+            if (writing || closed) return;
+            writing = true;
+        }
+        WRITERS.execute(writer);
+    }
+
+    /**
+     * Wait until everything recorded so far has been written. Only the writer writes to the stream, so if this times out the
+     * writer is left to finish on its own.
+     */
+    public void flush() {
+        final long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MILLIS;
+        synchronized (this) {
+            while (writing || !queue.isEmpty() || dropped.get() > 0) {
+                if (!writing) {
+                    writing = true;
+                    WRITERS.execute(writer);
+                }
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return;
+                try {
+                    wait(remaining);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Nothing recorded after this is written. If the flush times out, the writer closes the stream when it has finished.
+     */
+    public void close() {
+        closed = true;
+        flush();
+        synchronized (this) {
+            if (writing) {
+                closeWhenWritten = true;
+                return;
+            }
+        }
+        closeStream();
+    }
+
+    private void closeStream() {
+        try {
+            out.close();
+        } catch (IOException ioe) {
+            LOG.warn(Messages.log_traceFailed(ioe.getLocalizedMessage()), ioe);
+        }
+    }
+
+    private void write() {
+        boolean again = false;
+        boolean close = false;
+        try {
+            Record record;
+            while ((record = queue.poll()) != null) {
+                if (!failed) writeLine(record.toJson());
+            }
+            final long lost = dropped.getAndSet(0);
+            if (lost > 0 && !failed)
+                writeLine("{\"time\":\"" + Instant.ofEpochMilli(System.currentTimeMillis()) + "\",\"dropped\":" + lost + "}");
+            if (!failed) out.flush();
+        } catch (IOException ioe) {
+            fail(ioe);
+        } finally {
+            synchronized (this) {
+                again = !queue.isEmpty() || dropped.get() > 0;
+                close = !again && closeWhenWritten;
+                writing = again;
+                notifyAll();
+            }
+        }
+        if (again)
+            WRITERS.execute(writer);
+        else if (close)
+            closeStream();
+    }
+
+    private void writeLine(final String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void fail(final IOException ioe) {
+        if (!failed) LOG.warn(Messages.log_traceFailed(ioe.getLocalizedMessage()), ioe);
+        failed = true;
+        queue.clear();
+    }
+
+    static String quote(final String value) {
+        if (value == null) return "null";
+        final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static final class Record {
+
+        private final long time;
+        private final String phase;
+        private final String configName;
+        private final String path;
+        private final long bytes;
+        private final long nanos;
+        private final boolean success;
+
+        Record(final long time, final String phase, final String configName, final String path, final long bytes, final long nanos,
+               final boolean success) {
+            this.time = time;
+            this.phase = phase;
+            this.configName = configName;
+            this.path = path;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.success = success;
+        }
+
+        String toJson() {
+            return "{\"time\":\"" + Instant.ofEpochMilli(time) + "\",\"phase\":" + quote(phase)
+                    + ",\"config\":" + quote(configName) + ",\"path\":" + quote(path) + ",\"bytes\":" + bytes
+                    + ",\"durationMicros\":" + TimeUnit.NANOSECONDS.toMicros(nanos)
+                    + ",\"outcome\":\"" + (success ? "success" : "failure") + "\"}";
+        }
+
+    }
+
+}
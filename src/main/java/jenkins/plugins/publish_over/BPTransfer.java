@@ -36,16 +36,23 @@ import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings({ "PMD.TooManyMethods", "PMD.SignatureDeclareThrowsException" })
 public class BPTransfer implements Serializable {
 
     private static final long serialVersionUID = 1L;
+    private static final long MEGABYTE = 1024L * 1024;
+    private static final int DEFAULT_MULTIPART_CONNECTIONS = 4;
+    private static final int DEFAULT_PREFETCH_MEMORY = 32;
     private static final Log LOG = LogFactory.getLog(BPTransfer.class);
 
     private static FileFinderResult list(final FilePath base, final String includes, final String excludes,
@@ -70,6 +77,15 @@ public class BPTransfer implements Serializable {
     private final boolean noDefaultExcludes;
     private final boolean makeEmptyDirs;
     private final String patternSeparator;
+    private BPCompression compression;
+    private boolean rewriteChangedBlocks;
+    private int multipartThreshold;
+    private int multipartConnections;
+    private boolean multipartAdaptive;
+    private int hedgeThreshold;
+    private boolean streamFromAgent;
+    private int prefetchFiles;
+    private int prefetchMemory;
 
     // @TODO can now test excludes and default excludes
     BPTransfer(final String sourceFiles, final String remoteDirectory, final String removePrefix,
@@ -117,6 +133,37 @@ public class BPTransfer implements Serializable {
 
     public String getPatternSeparator() { return patternSeparator; }
 
+    public BPCompression getCompression() { return compression; }
+    public void setCompression(final BPCompression compression) { this.compression = compression; }
+
+    /**
+     * @return true to compare each block of a file with the block at the same offset in the last upload and rewrite only those
+     * that differ. Inserting or removing bytes changes every block after it, so this helps files that change in place.
+     */
+    public boolean isRewriteChangedBlocks() { return rewriteChangedBlocks; }
+    public void setRewriteChangedBlocks(final boolean rewriteChangedBlocks) { this.rewriteChangedBlocks = rewriteChangedBlocks; }
+
+    public int getMultipartThreshold() { return multipartThreshold; }
+    public void setMultipartThreshold(final int multipartThreshold) { this.multipartThreshold = multipartThreshold; }
+
+    public int getMultipartConnections() { return multipartConnections; }
+    public void setMultipartConnections(final int multipartConnections) { this.multipartConnections = multipartConnections; }
+
+    public boolean isMultipartAdaptive() { return multipartAdaptive; }
+    public void setMultipartAdaptive(final boolean multipartAdaptive) { this.multipartAdaptive = multipartAdaptive; }
+
+    public int getHedgeThreshold() { return hedgeThreshold; }
+    public void setHedgeThreshold(final int hedgeThreshold) { this.hedgeThreshold = hedgeThreshold; }
+
+    public boolean isStreamFromAgent() { return streamFromAgent; }
+    public void setStreamFromAgent(final boolean streamFromAgent) { this.streamFromAgent = streamFromAgent; }
+
+    public int getPrefetchFiles() { return prefetchFiles; }
+    public void setPrefetchFiles(final int prefetchFiles) { this.prefetchFiles = prefetchFiles; }
+
+    public int getPrefetchMemory() { return prefetchMemory; }
+    public void setPrefetchMemory(final int prefetchMemory) { this.prefetchMemory = prefetchMemory; }
+
     public boolean hasConfiguredSourceFiles() {
         return Util.fixEmptyAndTrim(getSourceFiles()) != null;
     }
@@ -134,26 +181,59 @@ public class BPTransfer implements Serializable {
 
     private void assertBaseDirectoryExists(final BPBuildInfo buildInfo) throws Exception {
         if (!buildInfo.getBaseDirectory().exists())
-            throw new BapPublisherException(Messages.exception_baseDirectoryNotExist());
+            throw new BapPermanentException(Messages.exception_baseDirectoryNotExist());
     }
 
     public int transfer(final BPBuildInfo buildInfo, final BPClient client) throws Exception {
         assertBaseDirectoryExists(buildInfo);
-        return transfer(buildInfo, client, TransferState.create(getSourceFiles(buildInfo)));
+        final long start = System.nanoTime();
+        final TransferState state = TransferState.create(getSourceFiles(buildInfo));
+        state.scanNanos = System.nanoTime() - start;
+        buildInfo.trace(BPTrace.SCAN, sourceFiles, 0, state.scanNanos, true);
+        return transfer(buildInfo, client, state);
     }
 
     public int transfer(final BPBuildInfo buildInfo, final BPClient client, final TransferState state) {
+        final DirectorySummary summary = buildInfo.isVerbose() && buildInfo.isVerboseSummary() ? new DirectorySummary(buildInfo)
+                : null;
+        if (summary != null) buildInfo.setSummarizing(true);
+        final long start = System.nanoTime();
         try {
-            final DirectoryMaker dirMaker = new DirectoryMaker(buildInfo, client);
+            final DirectoryMaker dirMaker = new DirectoryMaker(buildInfo, client, state);
             if (cleanRemote && !state.doneCleaning) {
                 dirMaker.resetToSubDirectory();
                 client.deleteTree();
                 state.doneCleaning = true;
             }
-            while (state.transferred < state.sourceFiles.length) {
-                dirMaker.changeAndMakeDirs(state.sourceFiles[state.transferred], false);
-                transferFile(client, state.sourceFiles[state.transferred]);
-                state.transferred++;
+            if (isStreamed(buildInfo, state))
+                transferStreamed(buildInfo, client, dirMaker, state, summary);
+            final Prefetcher prefetcher = createPrefetcher(state);
+            try {
+                while (state.transferred < state.sourceFiles.length) {
+                    final FilePath filePath = state.sourceFiles[state.transferred];
+                    dirMaker.changeAndMakeDirs(filePath, false);
+                    final BPFlightEvents.TransferFile event = new BPFlightEvents.TransferFile();
+                    event.begin();
+                    final long fileStart = System.nanoTime();
+                    final long bytesBefore = state.bytes;
+                    boolean sent = false;
+                    try {
+                        transferFile(buildInfo, client, dirMaker, filePath, state, prefetcher);
+                        recordLatency(buildInfo, BPPublisherMetrics.Operation.TRANSFER_FILE, fileStart);
+                        sent = true;
+                    } finally {
+                        event.finish(filePath.getRemote(), state.bytes - bytesBefore, sent);
+                        buildInfo.trace(BPTrace.TRANSFER_FILE, filePath.getRemote(), state.bytes - bytesBefore,
+                                System.nanoTime() - fileStart, sent);
+                    }
+                    state.transferred++;
+                    if (summary != null) summary.add(dirMaker.getCurrentDirectory());
+                }
+            } finally {
+                if (prefetcher != null) {
+                    prefetcher.stop();
+                    state.recordPrefetch(prefetcher);
+                }
             }
             while (state.dirsMade < state.emptyDirs.length) {
                 dirMaker.changeAndMakeDirs(state.emptyDirs[state.dirsMade], true);
@@ -161,34 +241,289 @@ public class BPTransfer implements Serializable {
             }
         } catch (Exception e) {
             throw new BapTransferException(e, state);
+        } finally {
+            state.transferNanos += System.nanoTime() - start;
+            if (summary != null) {
+                buildInfo.setSummarizing(false);
+                summary.print();
+            }
         }
+        printSummary(buildInfo, state);
+        if (buildInfo.getMetrics() != null)
+            buildInfo.getMetrics().addTransfer(new BPTransferMetrics(sourceFiles, remoteDirectory, state.transferred,
+                    state.directoriesCreated, state.bytes, TimeUnit.NANOSECONDS.toMillis(state.scanNanos),
+                    TimeUnit.NANOSECONDS.toMillis(state.transferNanos)));
         return state.transferred;
     }
 
+    private static void recordLatency(final BPBuildInfo buildInfo, final BPPublisherMetrics.Operation operation,
+                                      final long start) {
+        if (buildInfo != null && buildInfo.getMetrics() != null)
+            buildInfo.getMetrics().record(operation, System.nanoTime() - start);
+    }
+
     public void transferFile(final BPClient client, final FilePath filePath) throws Exception {
-        final InputStream inputStream = filePath.read();
+        transferFile(null, client, null, filePath, null, null);
+    }
+
+    private void transferFile(final BPBuildInfo buildInfo, final BPClient client, final DirectoryMaker dirMaker,
+                              final FilePath filePath, final TransferState state, final Prefetcher prefetcher) throws Exception {
+        if (isMultipart(buildInfo, client, filePath)) {
+            transferMultipart(buildInfo, (BPRandomAccessClient) client, dirMaker, filePath, state);
+            return;
+        }
+        if (rewriteChangedBlocks && client instanceof BPRandomAccessClient
+                && filePath.length() >= BlockSignature.DEFAULT_BLOCK_SIZE) {
+            final DeltaTransfer delta = new DeltaTransfer(this, (BPRandomAccessClient) client, filePath);
+            delta.transfer();
+            if (state != null) {
+                state.recordDelta(delta);
+                state.bytes += delta.getBytesSent();
+            }
+            return;
+        }
+        if (compression == null && isHedged(buildInfo, client, filePath)) {
+            final HedgedTransfer hedged = new HedgedTransfer(this, (BPRenamingClient) client, buildInfo, filePath,
+                    dirMaker.getCurrentDirectory());
+            hedged.transfer();
+            state.recordHedge(hedged);
+            state.bytes += hedged.getLength();
+            return;
+        }
+        final InputStream prefetched = prefetcher == null ? null : prefetcher.take(state.transferred);
+        final ProgressInputStream counted = new ProgressInputStream(prefetched == null ? filePath.read() : prefetched);
         try {
-            client.transferFile(this, filePath, inputStream);
+            transferContent(buildInfo, client, filePath, counted, state);
         } finally {
-            inputStream.close();
+            counted.close();
         }
+        if (state != null) state.bytes += counted.getTotalNumBytesRead();
+    }
+
+    /**
+     * The bandwidth limit is applied to the stream that is sent, so that it counts compressed bytes when compressing
+     */
+    private void transferContent(final BPBuildInfo buildInfo, final BPClient client, final FilePath filePath,
+                                 final InputStream inputStream, final TransferState state) throws Exception {
+        if (compression == null)
+            client.transferFile(this, filePath, throttle(buildInfo, inputStream));
+        else
+            transferCompressible(buildInfo, client, filePath, inputStream, state);
+    }
+
+    private static InputStream throttle(final BPBuildInfo buildInfo, final InputStream inputStream) {
+        return BPBandwidthLimiter.throttle(buildInfo == null ? null : buildInfo.getBandwidthLimiter(), inputStream);
+    }
+
+    /**
+     * Files that are uploaded as a multipart, hedged or delta upload read the file themselves, so they are not read ahead
+     */
+    private Prefetcher createPrefetcher(final TransferState state) {
+        if (prefetchFiles <= 0 || rewriteChangedBlocks || state.transferred >= state.sourceFiles.length) return null;
+        long maxBytes = (prefetchMemory > 0 ? prefetchMemory : DEFAULT_PREFETCH_MEMORY) * MEGABYTE;
+        if (multipartThreshold > 0) maxBytes = Math.min(maxBytes, multipartThreshold * MEGABYTE - 1);
+        if (hedgeThreshold > 0 && compression == null) maxBytes = Math.min(maxBytes, hedgeThreshold * MEGABYTE - 1);
+        final Prefetcher prefetcher = new Prefetcher(state.sourceFiles, state.transferred, prefetchFiles, maxBytes);
+        prefetcher.start();
+        return prefetcher;
+    }
+
+    private boolean isStreamed(final BPBuildInfo buildInfo, final TransferState state) {
+        return streamFromAgent && buildInfo.getBaseDirectory().isRemote() && state.transferred < state.sourceFiles.length;
+    }
+
+    /**
+     * Send the files that are left from one stream read from the agent. The files arrive one after the other, so multipart,
+     * delta and hedged uploads, which all need to read parts of a file more than once, are not used.
+     */
+    private void transferStreamed(final BPBuildInfo buildInfo, final BPClient client, final DirectoryMaker dirMaker,
+                                  final TransferState state, final DirectorySummary summary) throws Exception {
+        final FilePath baseDirectory = buildInfo.getBaseDirectory();
+        final StreamedTransfer stream = new StreamedTransfer(baseDirectory,
+                Arrays.asList(state.sourceFiles).subList(state.transferred, state.sourceFiles.length));
+        try {
+            while (state.transferred < state.sourceFiles.length) {
+                final FilePath filePath = state.sourceFiles[state.transferred];
+                dirMaker.changeAndMakeDirs(filePath, StreamedTransfer.getRelativePath(baseDirectory, filePath));
+                final BPFlightEvents.TransferFile event = new BPFlightEvents.TransferFile();
+                event.begin();
+                final long fileStart = System.nanoTime();
+                final ProgressInputStream counted = new ProgressInputStream(stream.next(filePath));
+                boolean sent = false;
+                try {
+                    transferContent(buildInfo, client, filePath, counted, state);
+                    recordLatency(buildInfo, BPPublisherMetrics.Operation.TRANSFER_FILE, fileStart);
+                    sent = true;
+                } finally {
+                    event.finish(filePath.getRemote(), counted.getTotalNumBytesRead(), sent);
+                    buildInfo.trace(BPTrace.TRANSFER_FILE, filePath.getRemote(), counted.getTotalNumBytesRead(),
+                            System.nanoTime() - fileStart, sent);
+                }
+                state.bytes += counted.getTotalNumBytesRead();
+                state.transferred++;
+                if (summary != null) summary.add(dirMaker.getCurrentDirectory());
+            }
+            stream.finish();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void transferMultipart(final BPBuildInfo buildInfo, final BPRandomAccessClient client, final DirectoryMaker dirMaker,
+                                   final FilePath filePath, final TransferState state) throws Exception {
+        final BPAdaptiveConcurrency adaptive = multipartAdaptive ? buildInfo.getAdaptiveConcurrency() : null;
+        final int connections = adaptive == null ? getEffectiveMultipartConnections()
+                : adaptive.getConnections(getEffectiveMultipartConnections());
+        final MultipartTransfer multipart = new MultipartTransfer(this, client, buildInfo.getClientFactory(), filePath,
+                dirMaker.getCurrentDirectory(), state, connections, buildInfo.getBandwidthLimiter());
+        final long start = System.nanoTime();
+        try {
+            multipart.transfer();
+        } catch (Exception e) {
+            if (adaptive != null) adaptive.failed(multipart.getConnections());
+            throw e;
+        }
+        if (adaptive != null) {
+            final int next = adaptive.record(multipart.getConnections(), multipart.getBytesSent(), System.nanoTime() - start,
+                    multipart.getErrors() > 0);
+            final long kilobytesPerSecond = Math.round(adaptive.getThroughput() / BPBandwidthLimiter.KILOBYTE);
+            buildInfo.printFileIfVerbose(Messages.console_multipartAdapted(filePath.getName(), multipart.getConnections(),
+                    kilobytesPerSecond, Math.min(next, getEffectiveMultipartConnections())));
+        }
+        state.recordMultipart(multipart);
+        state.bytes += multipart.getLength();
+    }
+
+    private boolean isMultipart(final BPBuildInfo buildInfo, final BPClient client, final FilePath filePath) throws Exception {
+        return multipartThreshold > 0 && buildInfo != null && buildInfo.getClientFactory() != null
+                && client instanceof BPRandomAccessClient && filePath.length() >= multipartThreshold * MEGABYTE;
+    }
+
+    private boolean isHedged(final BPBuildInfo buildInfo, final BPClient client, final FilePath filePath) throws Exception {
+        return hedgeThreshold > 0 && buildInfo != null && buildInfo.getClientFactory() != null
+                && HedgedTransfer.isSupported(client) && filePath.length() >= hedgeThreshold * MEGABYTE;
+    }
+
+    /**
+     * Open another connection through the factory and change it to the directory, relative to the remote root, that the
+     * publishing client is in
+     */
+    static BPClient openConnection(final BPClientFactory clientFactory, final String remoteDirectory) throws Exception {
+        final BPClient connection = clientFactory.createClient();
+        try {
+            connection.changeToInitialDirectory();
+            if (!"".equals(remoteDirectory)) {
+                for (String directory : remoteDirectory.split("/")) {
+                    if (!connection.changeDirectory(directory))
+                        throw new BapPublisherException(Messages.exception_failedToCreateDirectory(directory));
+                }
+            }
+            return connection;
+        } catch (Exception e) {
+            clientFactory.closeClient(connection);
+            throw e;
+        }
+    }
+
+    private int getEffectiveMultipartConnections() {
+        return multipartConnections > 1 ? multipartConnections : DEFAULT_MULTIPART_CONNECTIONS;
+    }
+
+    private void transferCompressible(final BPBuildInfo buildInfo, final BPClient client, final FilePath filePath,
+                                      final InputStream inputStream, final TransferState state) throws Exception {
+        if (!(client instanceof BPRemoteNameClient)) {
+            client.transferFile(this, filePath, throttle(buildInfo, inputStream));
+            if (state != null) {
+                state.compressionSkipped++;
+                state.compressionUnsupported = true;
+            }
+            return;
+        }
+        if (BPCompression.hasCompressedExtension(filePath.getName())) {
+            client.transferFile(this, filePath, throttle(buildInfo, inputStream));
+            if (state != null) state.compressionSkipped++;
+            return;
+        }
+        final PushbackInputStream source = new PushbackInputStream(inputStream, BPCompression.SAMPLE_SIZE);
+        final byte[] sample = new byte[BPCompression.SAMPLE_SIZE];
+        final int sampled = BPCompression.readSample(source, sample);
+        source.unread(sample, 0, sampled);
+        if (!BPCompression.isCompressible(sample, sampled)) {
+            client.transferFile(this, filePath, throttle(buildInfo, source));
+            if (state != null) state.compressionSkipped++;
+            return;
+        }
+        final String remoteName = filePath.getName() + compression.getExtension();
+        if (buildInfo != null) buildInfo.printFileIfVerbose(Messages.console_compressedAs(filePath.getName(), remoteName));
+        final CompressingInputStream compressed = compression.compress(source);
+        try {
+            ((BPRemoteNameClient) client).transferFile(this, filePath, remoteName, throttle(buildInfo, compressed));
+        } finally {
+            compressed.close();
+        }
+        if (state != null) state.recordCompression(compressed);
+    }
+
+    private void printSummary(final BPBuildInfo buildInfo, final TransferState state) {
+        if (state.multipartFiles > 0)
+            buildInfo.println(Messages.console_multipartSummary(state.multipartFiles, state.multipartParts, state.multipartConnections,
+                    state.partRetries));
+        if (state.hedgedFiles > 0)
+            buildInfo.println(Messages.console_hedgeSummary(state.hedgedFiles, state.hedgeWins));
+        if (state.prefetchedFiles > 0 || state.prefetchWaits > 0)
+            buildInfo.println(Messages.console_prefetchSummary(state.prefetchedFiles, state.prefetchWaits,
+                    state.prefetchWaitMillis));
+        if (state.deltaFiles > 0)
+            buildInfo.println(Messages.console_deltaSummary(state.deltaBlocksSent, state.deltaBlocks, state.deltaFiles));
+        if (state.compressionUnsupported)
+            buildInfo.println(Messages.console_compressionNotSupported());
+        if (state.compressedFiles == 0 && state.compressionSkipped == 0) return;
+        final String ratio = state.compressedBytes == 0 ? "-"
+                : String.format(Locale.ENGLISH, "%.2f", (double) state.uncompressedBytes / state.compressedBytes);
+        buildInfo.println(Messages.console_compressionSummary(state.compressedFiles, state.uncompressedBytes, state.compressedBytes,
+                ratio, state.compressionSkipped, TimeUnit.NANOSECONDS.toMillis(state.compressionCpuTime),
+                compression.getExtension()));
     }
 
     private class DirectoryMaker {
 
         private final BPBuildInfo buildInfo;
         private final BPClient client;
+        private final TransferState state;
         private final Set<String> flattenedFileNames = new LinkedHashSet<String>();
         private boolean flattenResetCompleted;
         private String previousPath;
         private String relativeRemoteSubDirectory;
+        private String currentDirectory = "";
 
-        DirectoryMaker(final BPBuildInfo buildInfo, final BPClient client) throws IOException {
+        DirectoryMaker(final BPBuildInfo buildInfo, final BPClient client, final TransferState state) throws IOException {
             this.buildInfo = buildInfo;
             this.client = client;
+            this.state = state;
         }
 
         public void changeAndMakeDirs(final FilePath filePath, final boolean isDirectory) throws IOException, InterruptedException {
+            prepareFlatten(filePath);
+            final String relPath = isDirectory ? buildInfo.getRelativeDir(filePath, removePrefix)
+                                               : buildInfo.getRelativePathToFile(filePath, removePrefix);
+            changeIfDifferent(filePath, relPath, isDirectory ? null : relPath);
+        }
+
+        /**
+         * For a file whose path relative to the base directory is already known, so that the file is not asked for it
+         */
+        public void changeAndMakeDirs(final FilePath filePath, final String relativePath)
+                throws IOException, InterruptedException {
+            if (relativePath == null) {
+                changeAndMakeDirs(filePath, false);
+                return;
+            }
+            prepareFlatten(filePath);
+            final String relPath = buildInfo.getRelativePathToFile(relativePath, removePrefix);
+            changeIfDifferent(filePath, relPath, relPath);
+        }
+
+        private void prepareFlatten(final FilePath filePath) throws IOException {
             if (flatten) {
                 assertNotDuplicateFileName(filePath);
                 if (!flattenResetCompleted) {
@@ -197,21 +532,31 @@ public class BPTransfer implements Serializable {
                     flattenResetCompleted = true;
                 }
             }
-            final String relPath = isDirectory ? buildInfo.getRelativeDir(filePath, removePrefix)
-                                               : buildInfo.getRelativePathToFile(filePath, removePrefix);
+        }
+
+        private void changeIfDifferent(final FilePath filePath, final String relPath, final String targetDirectory)
+                throws IOException, InterruptedException {
             if (LOG.isDebugEnabled())
                 LOG.debug(Messages.log_pathToFile(filePath.getName(), relPath));
             if (!relPath.equals(previousPath) && !flatten) {
                 resetToSubDirectory();
-                changeToTargetDirectory(filePath);
+                changeToTargetDirectory(targetDirectory == null ? buildInfo.getRelativePathToFile(filePath, removePrefix)
+                        : targetDirectory);
                 previousPath = relPath;
             }
         }
 
+        /**
+         * @return the directory the client is in, relative to the initial directory
+         */
+        String getCurrentDirectory() {
+            return currentDirectory;
+        }
+
         private void assertNotDuplicateFileName(final FilePath filePath) {
             final String fileName = filePath.getName();
             if (flattenedFileNames.contains(fileName))
-                throw new BapPublisherException(Messages.exception_flattenModeDuplicateFileName(fileName));
+                throw new BapPermanentException(Messages.exception_flattenModeDuplicateFileName(fileName));
             flattenedFileNames.add(fileName);
         }
 
@@ -222,6 +567,7 @@ public class BPTransfer implements Serializable {
             if (!"".equals(relativeRemoteSubDirectory)) {
                 chdir(relativeRemoteSubDirectory);
             }
+            currentDirectory = relativeRemoteSubDirectory;
         }
 
         private String getRelativeRemoteDirectory() {
@@ -248,7 +594,7 @@ public class BPTransfer implements Serializable {
                 final SimpleDateFormat sdf = new SimpleDateFormat(simpleDateFormatString, Locale.getDefault());
                 return sdf.format(buildInfo.getBuildTime().getTime());
             } catch (IllegalArgumentException iae) {
-                throw new BapPublisherException(Messages.exception_badDateFormat(simpleDateFormatString, iae.getLocalizedMessage()), iae);
+                throw new BapPermanentException(Messages.exception_badDateFormat(simpleDateFormatString, iae.getLocalizedMessage()), iae);
             }
         }
 
@@ -272,17 +618,51 @@ public class BPTransfer implements Serializable {
         }
 
         private boolean changeOrMakeAndChangeDirectory(final String directory) throws IOException {
-            if (client.changeDirectory(directory))
+            if (changeDirectory(directory))
                 return true;
-            return client.makeDirectory(directory) && client.changeDirectory(directory);
+            if (!makeDirectory(directory))
+                return false;
+            state.directoriesCreated++;
+            return changeDirectory(directory);
+        }
+
+        private boolean changeDirectory(final String directory) throws IOException {
+            final BPFlightEvents.ChangeDirectory event = new BPFlightEvents.ChangeDirectory();
+            event.begin();
+            final long start = System.nanoTime();
+            boolean changed = false;
+            try {
+                changed = client.changeDirectory(directory);
+                return changed;
+            } finally {
+                recordLatency(buildInfo, BPPublisherMetrics.Operation.CHANGE_DIRECTORY, start);
+                event.finish(directory, changed);
+                buildInfo.trace(BPTrace.CHANGE_DIRECTORY, directory, 0, System.nanoTime() - start, changed);
+            }
+        }
+
+        private boolean makeDirectory(final String directory) throws IOException {
+            final BPFlightEvents.MakeDirectory event = new BPFlightEvents.MakeDirectory();
+            event.begin();
+            final long start = System.nanoTime();
+            boolean made = false;
+            try {
+                made = client.makeDirectory(directory);
+                return made;
+            } finally {
+                recordLatency(buildInfo, BPPublisherMetrics.Operation.MAKE_DIRECTORY, start);
+                event.finish(directory, made);
+                buildInfo.trace(BPTrace.MAKE_DIRECTORY, directory, 0, System.nanoTime() - start, made);
+            }
         }
 
-        private void changeToTargetDirectory(final FilePath filePath) throws IOException, InterruptedException {
+        private void changeToTargetDirectory(final String relativePath) throws IOException {
             if (flatten)
                 return;
-            final String relativePath = buildInfo.getRelativePathToFile(filePath, removePrefix);
-            if (!"".equals(relativePath))
+            if (!"".equals(relativePath)) {
                 chdir(relativePath);
+                currentDirectory = "".equals(currentDirectory) ? relativePath : currentDirectory + "/" + relativePath;
+            }
         }
 
         private void resetToSubDirectory() throws IOException {
@@ -292,10 +672,40 @@ public class BPTransfer implements Serializable {
 
     }
 
+    /**
+     * Counts the files sent to each directory in turn, to print one line for each run of files sent to the same directory in
+     * place of the verbose lines for each file
+     */
+    private static final class DirectorySummary {
+
+        private final BPBuildInfo buildInfo;
+        private String directory;
+        private int files;
+
+        DirectorySummary(final BPBuildInfo buildInfo) {
+            this.buildInfo = buildInfo;
+        }
+
+        void add(final String currentDirectory) {
+            if (files > 0 && !currentDirectory.equals(directory)) print();
+            directory = currentDirectory;
+            files++;
+        }
+
+        void print() {
+            if (files == 0) return;
+            buildInfo.println(Messages.console_directorySummary(files, directory));
+            files = 0;
+        }
+
+    }
+
     protected HashCodeBuilder addToHashCode(final HashCodeBuilder builder) {
         return builder.append(sourceFiles).append(removePrefix).append(remoteDirectory)
             .append(remoteDirectorySDF).append(flatten).append(cleanRemote).append(excludes).append(noDefaultExcludes)
-            .append(makeEmptyDirs).append(patternSeparator);
+            .append(makeEmptyDirs).append(patternSeparator).append(compression).append(rewriteChangedBlocks)
+            .append(multipartThreshold).append(multipartConnections).append(multipartAdaptive).append(hedgeThreshold)
+            .append(streamFromAgent).append(prefetchFiles).append(prefetchMemory);
     }
 
     protected EqualsBuilder addToEquals(final EqualsBuilder builder, final BPTransfer that) {
@@ -308,7 +718,16 @@ public class BPTransfer implements Serializable {
             .append(cleanRemote, that.cleanRemote)
             .append(noDefaultExcludes, that.noDefaultExcludes)
             .append(makeEmptyDirs, that.makeEmptyDirs)
-            .append(patternSeparator, that.patternSeparator);
+            .append(patternSeparator, that.patternSeparator)
+            .append(compression, that.compression)
+            .append(rewriteChangedBlocks, that.rewriteChangedBlocks)
+            .append(multipartThreshold, that.multipartThreshold)
+            .append(multipartConnections, that.multipartConnections)
+            .append(multipartAdaptive, that.multipartAdaptive)
+            .append(hedgeThreshold, that.hedgeThreshold)
+            .append(streamFromAgent, that.streamFromAgent)
+            .append(prefetchFiles, that.prefetchFiles)
+            .append(prefetchMemory, that.prefetchMemory);
     }
 
     protected ToStringBuilder addToToString(final ToStringBuilder builder) {
@@ -321,7 +740,16 @@ public class BPTransfer implements Serializable {
             .append("cleanRemote", cleanRemote)
             .append("noDefaultExcludes", noDefaultExcludes)
             .append("makeEmptyDirs", makeEmptyDirs)
-            .append("patternSeparator", patternSeparator);
+            .append("patternSeparator", patternSeparator)
+            .append("compression", compression)
+            .append("rewriteChangedBlocks", rewriteChangedBlocks)
+            .append("multipartThreshold", multipartThreshold)
+            .append("multipartConnections", multipartConnections)
+            .append("multipartAdaptive", multipartAdaptive)
+            .append("hedgeThreshold", hedgeThreshold)
+            .append("streamFromAgent", streamFromAgent)
+            .append("prefetchFiles", prefetchFiles)
+            .append("prefetchMemory", prefetchMemory);
     }
 
     public boolean equals(final Object that) {
@@ -346,6 +774,31 @@ public class BPTransfer implements Serializable {
         private int transferred;
         private int dirsMade;
         private boolean doneCleaning;
+        private int compressedFiles;
+        private int compressionSkipped;
+        private boolean compressionUnsupported;
+        private long uncompressedBytes;
+        private long compressedBytes;
+        private long compressionCpuTime;
+        private int deltaFiles;
+        private long deltaBlocksSent;
+        private long deltaBlocks;
+        private int multipartFiles;
+        private int multipartParts;
+        private int multipartConnections;
+        private int partRetries;
+        private int hedgedFiles;
+        private int hedgeWins;
+        private int prefetchedFiles;
+        private int prefetchWaits;
+        private long prefetchWaitMillis;
+        private long bytes;
+        private int directoriesCreated;
+        private long scanNanos;
+        private long transferNanos;
+        private int multipartFile = -1;
+        private BitSet completedParts;
+        private int partCount;
         private TransferState(final FileFinderResult sources) {
             this.sourceFiles = sources.getFiles();
             this.emptyDirs = sources.getDirectories();
@@ -353,6 +806,62 @@ public class BPTransfer implements Serializable {
         protected static TransferState create(final FileFinderResult sources) {
             return new TransferState(sources);
         }
+        int getTransferred() {
+            return transferred;
+        }
+        FilePath getCurrentFile() {
+            if (transferred < sourceFiles.length) return sourceFiles[transferred];
+            return dirsMade < emptyDirs.length ? emptyDirs[dirsMade] : null;
+        }
+        private void recordCompression(final CompressingInputStream compressed) {
+            compressedFiles++;
+            uncompressedBytes += compressed.getBytesIn();
+            compressedBytes += compressed.getBytesOut();
+            compressionCpuTime += compressed.getCpuTime();
+        }
+        private void recordDelta(final DeltaTransfer delta) {
+            deltaFiles++;
+            deltaBlocksSent += delta.getBlocksSent();
+            deltaBlocks += delta.getBlockCount();
+        }
+        private void recordHedge(final HedgedTransfer hedged) {
+            if (!hedged.isHedged()) return;
+            hedgedFiles++;
+            if (hedged.isHedgeWon()) hedgeWins++;
+        }
+        private void recordPrefetch(final Prefetcher prefetcher) {
+            prefetchedFiles += prefetcher.getPrefetched();
+            prefetchWaits += prefetcher.getWaits();
+            prefetchWaitMillis += prefetcher.getWaitMillis();
+        }
+        private synchronized void recordMultipart(final MultipartTransfer multipart) {
+            multipartFiles++;
+            multipartConnections = Math.max(multipartConnections, multipart.getConnections());
+        }
+        synchronized void beginMultipart(final int parts) {
+            if (multipartFile != transferred || partCount != parts) {
+                multipartFile = transferred;
+                partCount = parts;
+                completedParts = new BitSet(parts);
+            }
+        }
+        synchronized boolean isPartComplete(final int part) {
+            return completedParts.get(part);
+        }
+        synchronized void partComplete(final int part) {
+            completedParts.set(part);
+            multipartParts++;
+        }
+        synchronized boolean allPartsComplete() {
+            return completedParts.cardinality() == partCount;
+        }
+        synchronized void partRetried() {
+            partRetries++;
+        }
+        synchronized void endMultipart() {
+            multipartFile = -1;
+            completedParts = null;
+        }
     }
 
 }
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What one transfer set of a publisher did
+ */
+@ExportedBean
+public class BPTransferMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String sourceFiles;
+    private final String remoteDirectory;
+    private final int files;
+    private final int directories;
+    private final long bytes;
+    private final long scanMillis;
+    private final long transferMillis;
+
+    public BPTransferMetrics(final String sourceFiles, final String remoteDirectory, final int files, final int directories,
+                             final long bytes, final long scanMillis, final long transferMillis) {
+        this.sourceFiles = sourceFiles;
+        this.remoteDirectory = remoteDirectory;
+        this.files = files;
+        this.directories = directories;
+        this.bytes = bytes;
+        this.scanMillis = scanMillis;
+        this.transferMillis = transferMillis;
+    }
+
+    @Exported
+    public String getSourceFiles() { return sourceFiles; }
+
+    @Exported
+    public String getRemoteDirectory() { return remoteDirectory; }
+
+    @Exported
+    public int getFiles() { return files; }
+
+    /**
+     * @return the number of directories created on the server
+     */
+    @Exported
+    public int getDirectories() { return directories; }
+
+    /**
+     * @return the size of the files published, before any compression
+     */
+    @Exported
+    public long getBytes() { return bytes; }
+
+    @Exported
+    public long getScanMillis() { return scanMillis; }
+
+    @Exported
+    public long getTransferMillis() { return transferMillis; }
+
+    @Exported
+    public long getBytesPerSecond() { return bytesPerSecond(bytes, transferMillis); }
+
+    static long bytesPerSecond(final long bytes, final long millis) {
+        return millis <= 0 ? 0 : bytes * TimeUnit.SECONDS.toMillis(1) / millis;
+    }
+
+}
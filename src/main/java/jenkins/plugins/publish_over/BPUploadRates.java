@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling window of the rates seen for large uploads to a host configuration, kept for the life of the JVM
+ */
+public final class BPUploadRates {
+
+    static final int WINDOW = 16;
+    static final int MIN_SAMPLES = 3;
+    private static final ConcurrentMap<String, BPUploadRates> RATES = new ConcurrentHashMap<String, BPUploadRates>();
+
+    public static BPUploadRates get(final BPHostConfiguration hostConfig) {
+        final String name = hostConfig.getName();
+        if (name == null) return new BPUploadRates();
+        BPUploadRates rates = RATES.get(name);
+        if (rates == null) {
+            final BPUploadRates created = new BPUploadRates();
+            rates = RATES.putIfAbsent(name, created);
+            if (rates == null) rates = created;
+        }
+        return rates;
+    }
+
+    static void clear() {
+        RATES.clear();
+    }
+
+    private final Deque<Double> samples = new ArrayDeque<Double>();
+
+    public synchronized void record(final long bytes, final long nanos) {
+        if (bytes <= 0 || nanos <= 0) return;
+        if (samples.size() == WINDOW) samples.removeFirst();
+        samples.addLast(bytes * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+    }
+
+    /**
+     * @return the median rate in bytes per second, or 0 if there are too few samples to go on
+     */
+    public synchronized double getMedian() {
+        if (samples.size() < MIN_SAMPLES) return 0;
+        final Double[] sorted = samples.toArray(new Double[samples.size()]);
+        Arrays.sort(sorted);
+        final int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+}
@@ -31,8 +31,19 @@ import org.apache.commons.lang.builder.ToStringStyle;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,6 +62,9 @@ public class BapPublisher<TRANSFER extends BPTransfer> implements Serializable {
     private Retry retry;
     private PublisherLabel label;
     private Credentials credentials;
+    private int parallelTransfers;
+    private boolean verboseSummary;
+    private boolean bufferConsole;
 
     public BapPublisher() { }
 
@@ -118,6 +132,15 @@ public class BapPublisher<TRANSFER extends BPTransfer> implements Serializable {
         return credentials;
     }
 
+    public int getParallelTransfers() { return parallelTransfers; }
+    public void setParallelTransfers(final int parallelTransfers) { this.parallelTransfers = parallelTransfers; }
+
+    public boolean isVerboseSummary() { return verboseSummary; }
+    public void setVerboseSummary(final boolean verboseSummary) { this.verboseSummary = verboseSummary; }
+
+    public boolean isBufferConsole() { return bufferConsole; }
+    public void setBufferConsole(final boolean bufferConsole) { this.bufferConsole = bufferConsole; }
+
     private int sumTransfers(final List<Integer> transferred) {
         int total = 0;
         for (int tx : transferred) {
@@ -137,15 +160,20 @@ public class BapPublisher<TRANSFER extends BPTransfer> implements Serializable {
 
     public void setEffectiveEnvironmentInBuildInfo(final BPBuildInfo buildInfo) {
         buildInfo.setVerbose(verbose);
+        buildInfo.setVerboseSummary(verboseSummary);
+        buildInfo.setConsoleBuffered(bufferConsole);
         final BPBuildEnv current = buildInfo.getCurrentBuildEnv();
         final BPBuildEnv target = buildInfo.getTargetBuildEnv();
+        // build info sent to an agent only carries the effective variables, which are the same for every publisher
+        final boolean haveEnvVars = current.getEnvVars() != null;
         if (target == null) {
-            buildInfo.setEnvVars(current.getEnvVars());
+            if (haveEnvVars) buildInfo.setEnvVars(current.getEnvVars());
             buildInfo.setBaseDirectory(current.getBaseDirectory());
             buildInfo.setBuildTime(current.getBuildTime());
         } else {
             buildInfo.setBaseDirectory(useWorkspaceInPromotion ? current.getBaseDirectory() : target.getBaseDirectory());
             buildInfo.setBuildTime(usePromotionTimestamp ? current.getBuildTime() : target.getBuildTime());
+            if (!haveEnvVars) return;
             final TreeMap<String, String> effectiveEnvVars = current.getEnvVarsWithPrefix(BPBuildInfo.PROMOTION_ENV_VARS_PREFIX);
             effectiveEnvVars.putAll(target.getEnvVars());
             buildInfo.setEnvVars(effectiveEnvVars);
@@ -154,14 +182,146 @@ public class BapPublisher<TRANSFER extends BPTransfer> implements Serializable {
 
     @SuppressWarnings("PMD.SignatureDeclareThrowsException")
     public void perform(final BPHostConfiguration hostConfig, final BPBuildInfo buildInfo) throws Exception {
-        final Performer performer = new Performer(hostConfig, buildInfo);
-        printNumberOfFilesTransferred(buildInfo, performer.perform());
+        try {
+            if (parallelTransfers > 1 && transfers.size() > 1) {
+                final List<List<Integer>> groups = groupForParallel();
+                if (groups.size() > 1) {
+                    printNumberOfFilesTransferred(buildInfo, performParallel(hostConfig, buildInfo, groups));
+                    return;
+                }
+            }
+            final Performer performer = new Performer(hostConfig, buildInfo, transfers);
+            printNumberOfFilesTransferred(buildInfo, performer.perform());
+        } finally {
+            buildInfo.flushConsole();
+            buildInfo.flushTrace();
+        }
+    }
+
+    /**
+     * Transfer sets that do not clean the remote directory, and whose remote directory is neither inside nor a parent of that
+     * of any other set, each get a group of their own. The other sets share one group, which runs them one after another in
+     * the order they were configured.
+     * @return the indexes of the transfers in each group
+     */
+    private List<List<Integer>> groupForParallel() {
+        final List<List<Integer>> groups = new ArrayList<List<Integer>>();
+        final List<Integer> sequential = new ArrayList<Integer>();
+        for (int i = 0; i < transfers.size(); i++) {
+            if (isIndependent(i))
+                groups.add(Collections.singletonList(i));
+            else
+                sequential.add(i);
+        }
+        if (!sequential.isEmpty()) groups.add(0, sequential);
+        return groups;
+    }
+
+    private boolean isIndependent(final int index) {
+        if (transfers.get(index).isCleanRemote()) return false;
+        final String prefix = getRemotePrefix(transfers.get(index));
+        if (prefix == null) return false;
+        for (int i = 0; i < transfers.size(); i++) {
+            if (i == index) continue;
+            final String other = getRemotePrefix(transfers.get(i));
+            if (other == null || prefix.startsWith(other) || other.startsWith(prefix)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the remote directory with a trailing separator, empty for the root, or null if it is only known at build time
+     */
+    private static String getRemotePrefix(final BPTransfer transfer) {
+        final String remoteDirectory = StringUtils.defaultString(transfer.getRemoteDirectory()).trim();
+        if (transfer.isRemoteDirectorySDF() || remoteDirectory.contains("$")) return null;
+        final String normalised = StringUtils.strip(remoteDirectory.replace('\\', '/'), "/");
+        return normalised.length() == 0 ? normalised : normalised + "/";
+    }
+
+    /**
+     * Give every group of transfers its own performer, connection and copy of the build info, running up to
+     * parallelTransfers of them at once. The first failure cancels the groups that have not started, as the sequential path
+     * would not have started them, and the groups already running are left to finish so that no upload is cut off half way
+     * through. The session held for the publish covers one group at a time; each of the others runs only if a session for it
+     * was free at the start, and is given back once every group has stopped.
+     */
+    @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+    private List<Integer> performParallel(final BPHostConfiguration hostConfig, final BPBuildInfo buildInfo,
+                                          final List<List<Integer>> groups) throws Exception {
+        final BPSessionPermits permits = buildInfo.getSessionPermits();
+        int sessions = 1;
+        while (sessions < Math.min(parallelTransfers, groups.size())
+                && (permits == null || permits.tryAcquire(hostConfig.getName())))
+            sessions++;
+        final ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        final CompletionService<List<Integer>> completion = new ExecutorCompletionService<List<Integer>>(executor);
+        final List<Future<List<Integer>>> futures = new ArrayList<Future<List<Integer>>>();
+        Throwable failure = null;
+        try {
+            for (List<Integer> group : groups) {
+                final List<TRANSFER> toTransfer = new ArrayList<TRANSFER>();
+                for (int index : group)
+                    toTransfer.add(transfers.get(index));
+                final BPBuildInfo transferInfo = buildInfo.copy(
+                        Messages.console_transferPrefix(buildInfo.getConsoleMsgPrefix(), configName, group.get(0) + 1));
+                final Performer performer = new Performer(hostConfig, transferInfo, toTransfer);
+                futures.add(completion.submit(new Callable<List<Integer>>() {
+                    public List<Integer> call() throws Exception {
+                        try {
+                            return performer.perform();
+                        } finally {
+                            transferInfo.flushConsole();
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    completion.take().get();
+                } catch (CancellationException ce) {
+                    // not started, as an earlier group failed
+                } catch (ExecutionException ee) {
+                    if (failure != null) continue;
+                    failure = ee.getCause() instanceof Exception || ee.getCause() instanceof Error ? ee.getCause() : ee;
+                    for (Future<List<Integer>> future : futures)
+                        future.cancel(false);
+                }
+            }
+            if (failure instanceof Error) throw (Error) failure;
+            if (failure != null) throw (Exception) failure;
+            final Integer[] transferred = new Integer[transfers.size()];
+            for (int i = 0; i < groups.size(); i++) {
+                final List<Integer> counts = futures.get(i).get();
+                for (int j = 0; j < counts.size(); j++)
+                    transferred[groups.get(i).get(j)] = counts.get(j);
+            }
+            return Arrays.asList(transferred);
+        } catch (InterruptedException ie) {
+            // the build has been aborted, so stop the running groups too
+            executor.shutdownNow();
+            throw ie;
+        } finally {
+            for (Future<List<Integer>> future : futures)
+                future.cancel(false);
+            executor.shutdown();
+            try {
+                // the groups keep their sessions until they have closed their connections
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } finally {
+                if (permits != null) {
+                    for (int i = 1; i < sessions; i++)
+                        permits.release(hostConfig.getName());
+                }
+            }
+        }
     }
 
     protected HashCodeBuilder addToHashCode(final HashCodeBuilder builder) {
         return builder.append(configName).append(verbose).append(transfers)
             .append(useWorkspaceInPromotion).append(usePromotionTimestamp)
-            .append(retry).append(label).append(credentials);
+            .append(retry).append(label).append(credentials)
+            .append(parallelTransfers).append(verboseSummary).append(bufferConsole);
     }
 
     protected EqualsBuilder addToEquals(final EqualsBuilder builder, final BapPublisher that) {
@@ -172,7 +332,10 @@ public class BapPublisher<TRANSFER extends BPTransfer> implements Serializable {
             .append(usePromotionTimestamp, that.usePromotionTimestamp)
             .append(retry, that.retry)
             .append(label, that.label)
-            .append(credentials, that.credentials);
+            .append(credentials, that.credentials)
+            .append(parallelTransfers, that.parallelTransfers)
+            .append(verboseSummary, that.verboseSummary)
+            .append(bufferConsole, that.bufferConsole);
     }
 
     protected ToStringBuilder addToToString(final ToStringBuilder builder) {
@@ -183,7 +346,10 @@ public class BapPublisher<TRANSFER extends BPTransfer> implements Serializable {
             .append("usePromotionTimestamp", usePromotionTimestamp)
             .append("retry", retry)
             .append("label", label)
-            .append("credentials", credentials);
+            .append("credentials", credentials)
+            .append("parallelTransfers", parallelTransfers)
+            .append("verboseSummary", verboseSummary)
+            .append("bufferConsole", bufferConsole);
     }
 
     public boolean equals(final Object that) {
@@ -208,30 +374,101 @@ public class BapPublisher<TRANSFER extends BPTransfer> implements Serializable {
         private final BPBuildInfo buildInfo;
         private BPClient client;
         private int remainingTries;
+        private int retryAttempt;
+        private long previousDelay;
+        private final long started = System.currentTimeMillis();
         private final ArrayList<TRANSFER> remainingTransfers = new ArrayList<TRANSFER>();
         private final List<Integer> transferred = new ArrayList<Integer>();
         private boolean transferComplete;
         private BPTransfer.TransferState transferState;
         private Exception exception;
+        private boolean completed;
+        private BPConnectionPool pool;
+        private BPConnectionPool.Lease lease;
+        private BPExceptionClassifier clientClassifier;
+        private final BPPublisherMetrics metrics = new BPPublisherMetrics(configName);
+        private final BPClientFactory clientFactory = new BPClientFactory() {
+            public BPClient createClient() {
+                return hostConfig.createClient(buildInfo, BapPublisher.this);
+            }
+        };
+        /**
+         * For the other connections of the publish, which each need a session of their own and are traced like the first
+         */
+        private final BPClientFactory connectionFactory = new BPClientFactory() {
+            public BPClient createClient() {
+                final BPSessionPermits permits = buildInfo.getSessionPermits();
+                if (permits != null && !permits.tryAcquire(hostConfig.getName()))
+                    throw new BapSessionLimitException(Messages.exception_sessionLimitReached(hostConfig.getName()));
+                final long connectStart = System.nanoTime();
+                boolean connected = false;
+                try {
+                    final BPClient client = clientFactory.createClient();
+                    connected = true;
+                    return client;
+                } catch (RuntimeException re) {
+                    if (permits != null) permits.release(hostConfig.getName());
+                    throw re;
+                } finally {
+                    trace(BPTrace.CONNECT, System.nanoTime() - connectStart, connected);
+                }
+            }
+            public void closeClient(final BPClient client) {
+                final long disconnectStart = System.nanoTime();
+                try {
+                    client.disconnectQuietly();
+                } finally {
+                    trace(BPTrace.DISCONNECT, System.nanoTime() - disconnectStart, true);
+                    final BPSessionPermits permits = buildInfo.getSessionPermits();
+                    if (permits != null) permits.release(hostConfig.getName());
+                }
+            }
+        };
 
-        protected Performer(final BPHostConfiguration hostConfig, final BPBuildInfo buildInfo) {
+        protected Performer(final BPHostConfiguration hostConfig, final BPBuildInfo buildInfo, final List<TRANSFER> toTransfer) {
             this.hostConfig = hostConfig;
             this.buildInfo = buildInfo;
             remainingTries = retry == null ? 0 : retry.getRetries();
-            remainingTransfers.addAll(transfers);
+            remainingTransfers.addAll(toTransfer);
         }
 
         private List<Integer> perform() throws Exception {
+            try {
+                return performWithRetries();
+            } finally {
+                metrics.setSuccess(completed);
+                buildInfo.addPublisherMetrics(Collections.singletonList(metrics));
+            }
+        }
+
+        private List<Integer> performWithRetries() throws Exception {
             do {
                 try {
                     if (credentials != null) buildInfo.put(BPBuildInfo.OVERRIDE_CREDENTIALS_CONTEXT_KEY, credentials);
-                    buildInfo.println(Messages.console_connecting(configName));
-                    client = hostConfig.createClient(buildInfo, BapPublisher.this);
+                    final BPFlightEvents.Connect connectEvent = new BPFlightEvents.Connect();
+                    connectEvent.begin();
+                    final long connectStart = System.nanoTime();
+                    try {
+                        connect();
+                        if (client instanceof BPExceptionClassifier) clientClassifier = (BPExceptionClassifier) client;
+                    } finally {
+                        final long connectNanos = System.nanoTime() - connectStart;
+                        metrics.addConnectMillis(TimeUnit.NANOSECONDS.toMillis(connectNanos));
+                        metrics.record(BPPublisherMetrics.Operation.CONNECT, connectNanos);
+                        connectEvent.finish(configName, client != null);
+                        trace(BPTrace.CONNECT, connectNanos, client != null);
+                    }
+                    buildInfo.setMetrics(metrics);
+                    buildInfo.setClientFactory(connectionFactory);
+                    buildInfo.setBandwidthLimiter(BPBandwidthLimiter.get(hostConfig, buildInfo.getBandwidthGrants()));
+                    buildInfo.setAdaptiveConcurrency(BPAdaptiveConcurrency.get(hostConfig));
+                    buildInfo.setUploadRates(BPUploadRates.get(hostConfig));
                     while (!remainingTransfers.isEmpty()) {
                         beginTransfers();
                         transfer();
                         endTransfers();
                     }
+                    completed = true;
                     return transferred;
                 } catch (BapTransferException bte) {
                     transferState = bte.getState();
@@ -239,23 +476,120 @@ public class BapPublisher<TRANSFER extends BPTransfer> implements Serializable {
                 } catch (Exception e) {
                     exception = e;
                 } finally {
+                    buildInfo.setMetrics(null);
+                    buildInfo.setClientFactory(null);
+                    buildInfo.setBandwidthLimiter(null);
+                    buildInfo.setAdaptiveConcurrency(null);
+                    buildInfo.setUploadRates(null);
                     if (credentials != null) buildInfo.remove(BPBuildInfo.OVERRIDE_CREDENTIALS_CONTEXT_KEY);
-                    if (client != null) {
-                        buildInfo.println(Messages.console_disconnecting(configName));
-                        client.disconnectQuietly();
-                    }
+                    if (client != null) release();
                 }
-            } while (remainingTries-- > 0 && delay());
+            } while (remainingTries-- > 0 && isTransient(exception) && delay());
             throw exception;
         }
 
+        private void connect() {
+            client = null;
+            lease = null;
+            pool = BPConnectionPool.get(hostConfig, credentials);
+            if (pool != null) {
+                buildInfo.println(Messages.console_connectingFromPool(configName));
+                try {
+                    lease = pool.borrow(clientFactory, buildInfo, BapPublisher.this);
+                } catch (RuntimeException re) {
+                    throw new BapConnectException(re);
+                }
+                client = lease.getClient();
+                return;
+            }
+            final BPConnectionCache cache = BPConnectionCache.forBuild(buildInfo);
+            if (cache != null) {
+                client = cache.take(getConnectionKey(), buildInfo, BapPublisher.this);
+                if (client != null) {
+                    buildInfo.println(Messages.console_reusingConnection(configName));
+                    return;
+                }
+            }
+            buildInfo.println(Messages.console_connecting(configName));
+            try {
+                client = clientFactory.createClient();
+            } catch (RuntimeException re) {
+                throw new BapConnectException(re);
+            }
+        }
+
+        private void release() {
+            if (lease != null) {
+                if (pool.release(lease, completed))
+                    buildInfo.printIfVerbose(Messages.console_returnedToPool(configName));
+                else
+                    buildInfo.println(Messages.console_disconnecting(configName));
+                return;
+            }
+            final BPConnectionCache cache = BPConnectionCache.forBuild(buildInfo);
+            if (completed && cache != null && cache.put(getConnectionKey(), client)) {
+                buildInfo.printIfVerbose(Messages.console_keepingConnection(configName));
+                return;
+            }
+            buildInfo.println(Messages.console_disconnecting(configName));
+            final BPFlightEvents.Disconnect disconnectEvent = new BPFlightEvents.Disconnect();
+            disconnectEvent.begin();
+            final long disconnectStart = System.nanoTime();
+            client.disconnectQuietly();
+            final long disconnectNanos = System.nanoTime() - disconnectStart;
+            metrics.record(BPPublisherMetrics.Operation.DISCONNECT, disconnectNanos);
+            disconnectEvent.finish(configName);
+            trace(BPTrace.DISCONNECT, disconnectNanos, true);
+        }
+
+        private void trace(final String phase, final long nanos, final boolean success) {
+            if (buildInfo.getTrace() != null) buildInfo.getTrace().record(phase, configName, null, 0, nanos, success);
+        }
+
+        private BPConnectionKey getConnectionKey() {
+            return new BPConnectionKey(hostConfig, credentials);
+        }
+
+        private boolean isTransient(final Exception failure) {
+            final boolean permanent = isPermanent(failure);
+            if (permanent)
+                buildInfo.println(Messages.console_permanentFailure(failure.getLocalizedMessage()));
+            return !permanent;
+        }
+
+        /**
+         * The classifier of the last client connected for this publisher is kept, so that it is still asked when reconnecting
+         * fails and there is no client
+         */
+        private boolean isPermanent(final Exception failure) {
+            return clientClassifier != null && clientClassifier.isPermanent(failure)
+                    || hostConfig.getExceptionClassifier().isPermanent(failure);
+        }
+
         private boolean delay() {
+            retryAttempt++;
+            final long delay = retry.getDelay(retryAttempt, previousDelay);
+            final long elapsed = System.currentTimeMillis() - started;
+            if (!retry.isWithinBudget(elapsed, delay)) {
+                buildInfo.println(Messages.console_retryBudgetExhausted(exception.getLocalizedMessage(), retry.getRetryBudget(), elapsed));
+                return false;
+            }
             LOGGER.log(Level.WARNING, Messages.log_exceptionCaught_retrying(), exception);
-            buildInfo.println(Messages.console_retryDelay(exception.getLocalizedMessage(), retry.getRetryDelay()));
+            buildInfo.println(Messages.console_retryDelay(exception.getLocalizedMessage(), delay, retryAttempt, retry.getRetries()));
+            previousDelay = delay;
+            metrics.retried();
+            final BPFlightEvents.RetryDelay delayEvent = new BPFlightEvents.RetryDelay();
+            delayEvent.begin();
+            final long delayStart = System.nanoTime();
+            boolean waited = false;
             try {
-                Thread.sleep(retry.getRetryDelay());
+                Thread.sleep(delay);
+                waited = true;
             } catch (InterruptedException ie) {
                 throw new BapPublisherException(Messages.exception_retryDelayInterrupted(), ie);
+            } finally {
+                delayEvent.finish(configName, retryAttempt, delay, exception.getLocalizedMessage());
+                trace(BPTrace.RETRY_DELAY, System.nanoTime() - delayStart, waited);
             }
             return true;
         }
@@ -272,13 +606,42 @@ public class BapPublisher<TRANSFER extends BPTransfer> implements Serializable {
                 transferComplete = true;
                 return;
             }
-            if (transferState == null)
-                transferred.add(transfer.transfer(buildInfo, client));
-            else
-                transferred.add(transfer.transfer(buildInfo, client, transferState));
+            transferred.add(transferRetryingFiles(transfer));
             transferComplete = true;
         }
 
+        /**
+         * Retry a failed file on the same connection while the client reports that the session is still usable, only
+         * leaving it to the full reconnect and retry when that fails too
+         */
+        private int transferRetryingFiles(final BPTransfer transfer) throws Exception {
+            final int fileRetries = retry == null ? 0 : retry.getFileRetries();
+            int failedFile = -1;
+            int fileAttempt = 0;
+            while (true) {
+                try {
+                    if (transferState == null)
+                        return transfer.transfer(buildInfo, client);
+                    else
+                        return transfer.transfer(buildInfo, client, transferState);
+                } catch (BapTransferException bte) {
+                    if (fileRetries <= 0) throw bte;
+                    final BPTransfer.TransferState state = bte.getState();
+                    if (state.getTransferred() != failedFile) {
+                        failedFile = state.getTransferred();
+                        fileAttempt = 0;
+                    }
+                    final Exception cause = (Exception) bte.getCause();
+                    if (++fileAttempt > fileRetries || isPermanent(cause) || !client.isConnected()) throw bte;
+                    LOGGER.log(Level.WARNING, Messages.log_exceptionCaught_retrying(), cause);
+                    buildInfo.println(Messages.console_fileRetry(cause.getLocalizedMessage(), state.getCurrentFile(), fileAttempt,
+                            fileRetries));
+                    metrics.retried();
+                    transferState = state;
+                }
+            }
+        }
+
         private void endTransfers() {
             client.endTransfers(remainingTransfers.get(0));
             remainingTransfers.remove(0);
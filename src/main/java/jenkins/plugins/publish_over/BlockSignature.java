@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+
+/**
+ * Per block checksums of a file - an Adler-32 and an MD5 for each fixed size block
+ */
+public class BlockSignature {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    private static final int MAGIC = 0x42505347;
+    private static final int STRONG_LENGTH = 16;
+    private static final int INITIAL_CAPACITY = 64;
+
+    public static BlockSignature read(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) return null;
+        final BlockSignature signature = new BlockSignature(data.readInt());
+        signature.length = data.readLong();
+        final int count = data.readInt();
+        signature.ensureCapacity(count);
+        for (int i = 0; i < count; i++)
+            signature.weak[i] = data.readInt();
+        data.readFully(signature.strong, 0, count * STRONG_LENGTH);
+        signature.count = count;
+        return signature;
+    }
+
+    private final int blockSize;
+    private final Adler32 adler = new Adler32();
+    private final MessageDigest md5;
+    private long length;
+    private int count;
+    private int[] weak = new int[INITIAL_CAPACITY];
+    private byte[] strong = new byte[INITIAL_CAPACITY * STRONG_LENGTH];
+
+    public BlockSignature(final int blockSize) {
+        this.blockSize = blockSize;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    public int getBlockSize() { return blockSize; }
+
+    public long getLength() { return length; }
+
+    public int getBlockCount() { return count; }
+
+    public void add(final byte[] block, final int offset, final int blockLength) {
+        adler.reset();
+        adler.update(block, offset, blockLength);
+        md5.update(block, offset, blockLength);
+        append(blockLength);
+    }
+
+    public void add(final ByteBuffer block) {
+        final int blockLength = block.remaining();
+        adler.reset();
+        adler.update(block.duplicate());
+        md5.update(block.duplicate());
+        append(blockLength);
+    }
+
+    private void append(final int blockLength) {
+        ensureCapacity(count + 1);
+        weak[count] = (int) adler.getValue();
+        try {
+            md5.digest(strong, count * STRONG_LENGTH, STRONG_LENGTH);
+        } catch (DigestException de) {
+            throw new IllegalStateException(de);
+        }
+        count++;
+        length += blockLength;
+    }
+
+    private void ensureCapacity(final int required) {
+        if (required <= weak.length) return;
+        final int capacity = Math.max(required, weak.length * 2);
+        weak = Arrays.copyOf(weak, capacity);
+        strong = Arrays.copyOf(strong, capacity * STRONG_LENGTH);
+    }
+
+    /**
+     * @return true if block index has the same checksums in both signatures
+     */
+    public boolean sameBlock(final int index, final BlockSignature other) {
+        if (index >= count || index >= other.count || blockSize != other.blockSize) return false;
+        if (weak[index] != other.weak[index]) return false;
+        final int from = index * STRONG_LENGTH;
+        return Arrays.equals(strong, from, from + STRONG_LENGTH, other.strong, from, from + STRONG_LENGTH);
+    }
+
+    public void write(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(blockSize);
+        data.writeLong(length);
+        data.writeInt(count);
+        for (int i = 0; i < count; i++)
+            data.writeInt(weak[i]);
+        data.write(strong, 0, count * STRONG_LENGTH);
+        data.flush();
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Compresses the wrapped stream as it is read, either as gzip or as a zlib (deflate) stream
+ */
+public class CompressingInputStream extends InputStream {
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int BYTE_MASK = 0xff;
+    private static final int BITS_PER_BYTE = 8;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final boolean gzip;
+    private final CRC32 crc = new CRC32();
+    private final Deflater deflater;
+    private final DeflaterInputStream body;
+    private final byte[] single = new byte[1];
+    private byte[] wrapper;
+    private int wrapperPos;
+    private boolean bodyDone;
+    private boolean closed;
+    private long bytesIn;
+    private long bytesOut;
+    private long cpuTime;
+
+    public CompressingInputStream(final InputStream source, final boolean gzip) {
+        this.gzip = gzip;
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+        body = new DeflaterInputStream(new CheckedInputStream(source, crc), deflater);
+        if (gzip) wrapper = GZIP_HEADER.clone();
+    }
+
+    public long getBytesIn() {
+        return closed ? bytesIn : deflater.getBytesRead();
+    }
+
+    public long getBytesOut() {
+        if (closed) return bytesOut;
+        return deflater.getBytesWritten() + (gzip ? GZIP_HEADER.length + GZIP_TRAILER_SIZE : 0);
+    }
+
+    /**
+     * @return CPU time in nanoseconds spent reading and compressing, or wall clock time if thread CPU time is not available
+     */
+    public long getCpuTime() { return cpuTime; }
+
+    @Override
+    public int read() throws IOException {
+        final int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (length == 0) return 0;
+        if (wrapper != null && wrapperPos < wrapper.length) {
+            final int count = Math.min(length, wrapper.length - wrapperPos);
+            System.arraycopy(wrapper, wrapperPos, buffer, offset, count);
+            wrapperPos += count;
+            return count;
+        }
+        if (bodyDone) return -1;
+        final long start = now();
+        final int read = body.read(buffer, offset, length);
+        cpuTime += now() - start;
+        if (read != -1) return read;
+        bodyDone = true;
+        if (!gzip) return -1;
+        wrapper = createTrailer();
+        wrapperPos = 0;
+        return read(buffer, offset, length);
+    }
+
+    private byte[] createTrailer() {
+        final byte[] trailer = new byte[GZIP_TRAILER_SIZE];
+        writeIntLE(trailer, 0, crc.getValue());
+        writeIntLE(trailer, GZIP_TRAILER_SIZE / 2, deflater.getBytesRead());
+        return trailer;
+    }
+
+    private static void writeIntLE(final byte[] buffer, final int offset, final long value) {
+        for (int i = 0; i < GZIP_TRAILER_SIZE / 2; i++)
+            buffer[offset + i] = (byte) (value >> (i * BITS_PER_BYTE) & BYTE_MASK);
+    }
+
+    private static long now() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        bytesIn = getBytesIn();
+        bytesOut = getBytesOut();
+        closed = true;
+        try {
+            body.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Rewrite only the blocks of a file that have changed since the last upload, using a block signature file stored next to the
+ * remote file. Each block is compared with the block at the same offset, as the client can only write at a position and cannot
+ * copy remote data from one position to another. If there is no usable signature, the whole file is sent and a signature is
+ * created for next time.
+ */
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+final class DeltaTransfer {
+
+    static final String SIGNATURE_SUFFIX = ".bpsig";
+
+    private final BPTransfer transfer;
+    private final BPRandomAccessClient client;
+    private final FilePath filePath;
+    private final String fileName;
+    private final String signatureName;
+    private int blocksSent;
+    private int blockCount;
+    private long bytesSent;
+
+    DeltaTransfer(final BPTransfer transfer, final BPRandomAccessClient client, final FilePath filePath) {
+        this.transfer = transfer;
+        this.client = client;
+        this.filePath = filePath;
+        fileName = filePath.getName();
+        signatureName = fileName + SIGNATURE_SUFFIX;
+    }
+
+    int getBlocksSent() { return blocksSent; }
+
+    int getBlockCount() { return blockCount; }
+
+    /**
+     * @return the bytes of the file that were written to the remote file, not counting the signature
+     */
+    long getBytesSent() { return bytesSent; }
+
+    void transfer() throws Exception {
+        final BlockSignature remote = readRemoteSignature();
+        if (remote != null && remote.getBlockSize() == BlockSignature.DEFAULT_BLOCK_SIZE && remoteFileExists()) {
+            transferChangedBlocks(remote);
+        } else {
+            // a failed full upload must not leave an old signature describing the remote file
+            if (remote != null) uploadSignature(new byte[0]);
+            transferWholeFile();
+        }
+    }
+
+    private void transferWholeFile() throws Exception {
+        final BlockSignature signature = new BlockSignature(BlockSignature.DEFAULT_BLOCK_SIZE);
+        final SignatureInputStream content = new SignatureInputStream(filePath.read(), signature);
+        try {
+            client.transferFile(transfer, filePath, content);
+            content.drain();
+        } finally {
+            content.close();
+        }
+        blocksSent = signature.getBlockCount();
+        blockCount = signature.getBlockCount();
+        bytesSent = signature.getLength();
+        writeSignature(signature);
+    }
+
+    private void transferChangedBlocks(final BlockSignature remote) throws Exception {
+        final BlockSignature signature = new BlockSignature(remote.getBlockSize());
+        final long size = filePath.isRemote() ? -1 : filePath.length();
+        if (size >= 0 && size <= Integer.MAX_VALUE)
+            compareMapped(remote, signature, (int) size);
+        else
+            compareBlocks(remote, signature);
+        if (remote.getLength() > signature.getLength())
+            client.truncateFile(fileName, signature.getLength());
+        blockCount = signature.getBlockCount();
+        writeSignature(signature);
+    }
+
+    /**
+     * Maps a local file once and computes the signature from the mapping, so only the changed blocks are copied, into the same
+     * block buffer that they are sent from
+     */
+    private void compareMapped(final BlockSignature remote, final BlockSignature signature, final int size) throws Exception {
+        final int blockSize = signature.getBlockSize();
+        final byte[] block = new byte[blockSize];
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath.getRemote()), StandardOpenOption.READ)) {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            for (int position = 0; position < size; position += blockSize) {
+                final int length = Math.min(blockSize, size - position);
+                signature.add(mapped.slice(position, length));
+                if (!signature.sameBlock(signature.getBlockCount() - 1, remote)) {
+                    mapped.get(position, block, 0, length);
+                    writeBlock(position, block, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a file on an agent, or too large to map in one go, once, into the same block buffer, which is also what changed
+     * blocks are sent from
+     */
+    private void compareBlocks(final BlockSignature remote, final BlockSignature signature) throws Exception {
+        final byte[] block = new byte[signature.getBlockSize()];
+        final InputStream content = filePath.read();
+        try {
+            long position = 0;
+            for (int length = IOUtils.read(content, block); length > 0; length = IOUtils.read(content, block)) {
+                signature.add(block, 0, length);
+                if (!signature.sameBlock(signature.getBlockCount() - 1, remote))
+                    writeBlock(position, block, length);
+                position += length;
+            }
+        } finally {
+            content.close();
+        }
+    }
+
+    private void writeBlock(final long position, final byte[] block, final int length) throws Exception {
+        client.writeFile(transfer, fileName, position, new ByteArrayInputStream(block, 0, length));
+        blocksSent++;
+        bytesSent += length;
+    }
+
+    private boolean remoteFileExists() throws Exception {
+        final InputStream content = client.readFile(fileName);
+        if (content == null) return false;
+        content.close();
+        return true;
+    }
+
+    private BlockSignature readRemoteSignature() throws Exception {
+        final InputStream content = client.readFile(signatureName);
+        if (content == null) return null;
+        try {
+            return BlockSignature.read(content);
+        } catch (IOException ioe) {
+            return null;
+        } finally {
+            content.close();
+        }
+    }
+
+    private void writeSignature(final BlockSignature signature) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        signature.write(out);
+        uploadSignature(out.toByteArray());
+    }
+
+    private void uploadSignature(final byte[] contents) throws Exception {
+        client.writeFile(transfer, signatureName, 0, new ByteArrayInputStream(contents));
+        client.truncateFile(signatureName, contents.length);
+    }
+
+    /**
+     * Builds the signature from the bytes as they are read by the client
+     */
+    private static final class SignatureInputStream extends FilterInputStream {
+
+        private final BlockSignature signature;
+        private final byte[] block;
+        private int filled;
+
+        SignatureInputStream(final InputStream in, final BlockSignature signature) {
+            super(in);
+            this.signature = signature;
+            block = new byte[signature.getBlockSize()];
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read == -1)
+                flushBlock();
+            else
+                update(new byte[] {(byte) read}, 0, 1);
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read == -1)
+                flushBlock();
+            else
+                update(buffer, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final byte[] skipped = new byte[(int) Math.min(n, block.length)];
+            final int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void update(final byte[] buffer, final int offset, final int length) {
+            int consumed = 0;
+            while (consumed < length) {
+                final int count = Math.min(length - consumed, block.length - filled);
+                System.arraycopy(buffer, offset + consumed, block, filled, count);
+                filled += count;
+                consumed += count;
+                if (filled == block.length) flushBlock();
+            }
+        }
+
+        private void flushBlock() {
+            if (filled == 0) return;
+            signature.add(block, 0, filled);
+            filled = 0;
+        }
+
+        void drain() throws IOException {
+            final byte[] buffer = new byte[block.length];
+            int read;
+            do {
+                read = read(buffer, 0, buffer.length);
+            } while (read != -1);
+        }
+
+    }
+
+}
@@ -59,14 +59,23 @@ public class FileFinder extends MasterToSlaveFileCallable<FileFinderResult> {
     }
 
     public FileFinderResult invoke(final File file, final VirtualChannel virtualChannel) throws IOException, InterruptedException {
-        final DirectoryScanner scanner = createDirectoryScanner(file, includes, excludes, defaultExcludes, patternSeparatorRegex);
-        final String[] includedFiles = scanner.getIncludedFiles();
-        final FilePath[] files = toFilePathArray(file, includedFiles);
+        final BPFlightEvents.Scan event = new BPFlightEvents.Scan();
+        event.begin();
+        FilePath[] files = new FilePath[0];
         FilePath[] dirs = new FilePath[0];
-        if (findEmptyDirectories) {
-            final String[] allDirs = scanner.getIncludedDirectories();
-            final String[] onlyLeaf = reduce(allDirs, allDirs);
-            dirs = toFilePathArray(file, reduce(onlyLeaf, includedFiles));
+        boolean success = false;
+        try {
+            final DirectoryScanner scanner = createDirectoryScanner(file, includes, excludes, defaultExcludes, patternSeparatorRegex);
+            final String[] includedFiles = scanner.getIncludedFiles();
+            files = toFilePathArray(file, includedFiles);
+            if (findEmptyDirectories) {
+                final String[] allDirs = scanner.getIncludedDirectories();
+                final String[] onlyLeaf = reduce(allDirs, allDirs);
+                dirs = toFilePathArray(file, reduce(onlyLeaf, includedFiles));
+            }
+            success = true;
+        } finally {
+            event.finish(includes, files.length, dirs.length, success);
         }
         return new FileFinderResult(files, dirs);
     }
@@ -0,0 +1,312 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Upload one file under a temporary name with the publishing client, and if it takes much longer than the median rate for
+ * large uploads says it should, start a second attempt on another connection. Whichever attempt finishes first is renamed
+ * into place. A losing hedge is disconnected; a losing first attempt is stopped at its next read, so that the publishing
+ * client stays connected, and only disconnected if it does not stop in time. The partial files are then deleted through a
+ * connection that is still open. The attempts run on a pool of daemon threads shared by every hedged upload in the JVM.
+ */
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+final class HedgedTransfer {
+
+    static final double HEDGE_FACTOR = 3;
+    static final long MIN_HEDGE_DELAY_MILLIS = 1000;
+    private static final Log LOG = LogFactory.getLog(HedgedTransfer.class);
+
+    private static final ExecutorService ATTEMPTS = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, HedgedTransfer.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final BPTransfer transfer;
+    private final BPRenamingClient client;
+    private final BPBuildInfo buildInfo;
+    private final BPClientFactory clientFactory;
+    private final FilePath filePath;
+    private final String remoteDirectory;
+    private final String fileName;
+    private final List<Attempt> attempts = new ArrayList<Attempt>();
+    private final List<Future<Attempt>> running = new ArrayList<Future<Attempt>>();
+    private boolean hedged;
+    private boolean hedgeWon;
+    private long length;
+
+    HedgedTransfer(final BPTransfer transfer, final BPRenamingClient client, final BPBuildInfo buildInfo, final FilePath filePath,
+                   final String remoteDirectory) {
+        this.transfer = transfer;
+        this.client = client;
+        this.buildInfo = buildInfo;
+        clientFactory = buildInfo.getClientFactory();
+        this.filePath = filePath;
+        this.remoteDirectory = remoteDirectory;
+        fileName = filePath.getName();
+    }
+
+    /**
+     * @return true if the client can upload under a temporary name and rename the upload into place
+     */
+    static boolean isSupported(final BPClient client) {
+        return client instanceof BPRenamingClient && client instanceof BPRemoteNameClient;
+    }
+
+    boolean isHedged() { return hedged; }
+
+    boolean isHedgeWon() { return hedgeWon; }
+
+    long getLength() { return length; }
+
+    /**
+     * @return milliseconds to wait before hedging, or -1 if there is no median to judge the upload against yet
+     */
+    static long getHedgeDelay(final long length, final double medianRate) {
+        if (medianRate <= 0) return -1;
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, (long) (HEDGE_FACTOR * length * TimeUnit.SECONDS.toMillis(1) / medianRate));
+    }
+
+    void transfer() throws Exception {
+        final BPUploadRates rates = buildInfo.getUploadRates();
+        length = filePath.length();
+        final long hedgeDelay = getHedgeDelay(length, rates == null ? 0 : rates.getMedian());
+        final CompletionService<Attempt> completion = new ExecutorCompletionService<Attempt>(ATTEMPTS);
+        final Attempt primary = start(client);
+        Attempt winner = null;
+        boolean clientStalled = false;
+        try {
+            int pending = 1;
+            final Future<Attempt> first = completion.submit(primary);
+            running.add(first);
+            Future<Attempt> done = hedgeDelay < 0 ? completion.take() : completion.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                buildInfo.println(Messages.console_hedgeStarted(fileName, hedgeDelay));
+                hedged = true;
+                pending++;
+                running.add(completion.submit(start(null)));
+                done = completion.take();
+            }
+            Exception failure = null;
+            Attempt finished = null;
+            while (finished == null) {
+                try {
+                    finished = done.get();
+                } catch (ExecutionException ee) {
+                    // the first attempt's failure says more than a hedge that could not get a connection
+                    if (failure == null || done == first)
+                        failure = ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+                    if (--pending == 0) throw failure;
+                    done = completion.take();
+                }
+            }
+            hedgeWon = finished != primary;
+            // the publishing client may still be busy with the first attempt, so a winning hedge renames its own file
+            finished.getRenamingClient().renameFile(finished.tempName, fileName);
+            winner = finished;
+        } finally {
+            for (Attempt attempt : attempts) {
+                if (attempt != winner) attempt.abort();
+            }
+            clientStalled = !awaitAttempts(Math.max(MIN_HEDGE_DELAY_MILLIS, hedgeDelay));
+            cleanUp(winner, clientStalled);
+        }
+        if (rates != null) rates.record(length, winner.elapsed);
+        if (clientStalled) buildInfo.println(Messages.console_hedgeClientStalled(fileName));
+    }
+
+    /**
+     * Wait for the attempts to return. A write blocked on the network only returns once the connection is closed, so if the
+     * first attempt is still running it is disconnected
+     * @return false if the publishing client had to be disconnected
+     */
+    private boolean awaitAttempts(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean stopped = true;
+        for (Future<Attempt> attempt : running) {
+            try {
+                attempt.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException te) {
+                if (stopped && attempt == running.get(0)) {
+                    stopped = false;
+                    client.disconnectQuietly();
+                }
+                attempt.cancel(true);
+            } catch (ExecutionException ee) {
+                // already reported, or the attempt lost
+            } catch (CancellationException ce) {
+                // a hedge that was aborted before it opened its connection
+            }
+        }
+        return stopped;
+    }
+
+    /**
+     * Delete the partial uploads through a connection that is still open - the publishing client, unless it had to be
+     * disconnected, then a winning hedge, then a new connection - and close the winning hedge
+     */
+    private void cleanUp(final Attempt winner, final boolean clientStalled) {
+        BPRenamingClient cleaner = clientStalled ? null : client;
+        if (cleaner == null && winner != null && winner.ownsConnection) cleaner = winner.getRenamingClient();
+        BPClient opened = null;
+        try {
+            for (Attempt attempt : attempts) {
+                if (attempt == winner || !attempt.started) continue;
+                if (cleaner == null) {
+                    opened = BPTransfer.openConnection(clientFactory, remoteDirectory);
+                    if (!(opened instanceof BPRenamingClient))
+                        throw new BapPermanentException(Messages.exception_hedgeNotSupported());
+                    cleaner = (BPRenamingClient) opened;
+                }
+                deleteQuietly(cleaner, attempt.tempName);
+            }
+        } catch (Exception e) {
+            LOG.warn(Messages.log_hedgeCleanupFailed(fileName, e.getLocalizedMessage()));
+        } finally {
+            if (opened != null) clientFactory.closeClient(opened);
+            if (winner != null) winner.abort();
+        }
+    }
+
+    /**
+     * @param connection the client to upload with, or null to open a connection for a hedge
+     */
+    private Attempt start(final BPClient connection) {
+        final Attempt attempt = new Attempt("." + fileName + "." + UUID.randomUUID().toString().substring(0, 8) + ".part",
+                connection);
+        attempts.add(attempt);
+        return attempt;
+    }
+
+    private static void deleteQuietly(final BPRenamingClient cleaner, final String tempName) {
+        try {
+            cleaner.deleteFile(tempName);
+        } catch (Exception e) {
+            LOG.warn(Messages.log_hedgeCleanupFailed(tempName, e.getLocalizedMessage()));
+        }
+    }
+
+    private final class Attempt implements Callable<Attempt> {
+
+        private final String tempName;
+        private final boolean ownsConnection;
+        private volatile BPClient connection;
+        private volatile boolean aborted;
+        private volatile boolean started;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private long elapsed;
+
+        Attempt(final String tempName, final BPClient connection) {
+            this.tempName = tempName;
+            this.connection = connection;
+            ownsConnection = connection == null;
+        }
+
+        public Attempt call() throws Exception {
+            if (ownsConnection) {
+                connection = BPTransfer.openConnection(clientFactory, remoteDirectory);
+                if (aborted) {
+                    close();
+                    throw new CancellationException();
+                }
+                if (!isSupported(connection))
+                    throw new BapPermanentException(Messages.exception_hedgeNotSupported());
+            }
+            final long start = System.nanoTime();
+            final InputStream content = new FilterInputStream(
+                    BPBandwidthLimiter.throttle(buildInfo.getBandwidthLimiter(), filePath.read())) {
+                public int read() throws IOException {
+                    checkAborted();
+                    return super.read();
+                }
+                public int read(final byte[] buffer, final int offset, final int count) throws IOException {
+                    checkAborted();
+                    return super.read(buffer, offset, count);
+                }
+            };
+            try {
+                started = true;
+                ((BPRemoteNameClient) connection).transferFile(transfer, filePath, tempName, content);
+            } finally {
+                content.close();
+            }
+            elapsed = System.nanoTime() - start;
+            return this;
+        }
+
+        private BPRenamingClient getRenamingClient() {
+            return (BPRenamingClient) connection;
+        }
+
+        private void checkAborted() throws IOException {
+            if (aborted) throw new InterruptedIOException(Messages.exception_hedgeLost(tempName));
+        }
+
+        /**
+         * Stop the upload, if it is still running, and close a connection opened for a hedge. Disconnecting is the only way to
+         * stop a hedge that is blocked writing to the network
+         */
+        private void abort() {
+            aborted = true;
+            if (ownsConnection) close();
+        }
+
+        /**
+         * Called from both threads, so that the connection, and its session, are given back once
+         */
+        private void close() {
+            final BPClient current = connection;
+            if (current != null && closed.compareAndSet(false, true)) clientFactory.closeClient(current);
+        }
+
+    }
+
+}
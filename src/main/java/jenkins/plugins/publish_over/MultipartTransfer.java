@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Upload one large file as byte ranges written concurrently over several connections. The client that is already publishing
+ * takes part, and the other connections are opened through the BPClientFactory and changed to the same directory. A part
+ * that fails is put back for another connection to retry, and completed parts are recorded in the TransferState so that
+ * a retry of the whole transfer does not send them again. The other connections are driven from a pool of daemon threads
+ * shared by every multipart transfer in the JVM, so a build with many large files does not start a new pool for each one.
+ */
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+final class MultipartTransfer {
+
+    static final long MIN_PART_SIZE = 8L * 1024 * 1024;
+    static final int MAX_PART_ATTEMPTS = 3;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final long PROGRESS_BYTES = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    private static final Log LOG = LogFactory.getLog(MultipartTransfer.class);
+
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, MultipartTransfer.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final BPTransfer transfer;
+    private final BPRandomAccessClient client;
+    private final BPClientFactory clientFactory;
+    private final FilePath filePath;
+    private final String fileName;
+    private final String remoteDirectory;
+    private final BPTransfer.TransferState state;
+    private final int connections;
+    private final BPBandwidthLimiter bandwidthLimiter;
+    private final long length;
+    private final long partSize;
+    private final int partCount;
+    private final BlockingQueue<Part> pending = new LinkedBlockingQueue<Part>();
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final ProgressTotal bytesSent = new ProgressTotal();
+    private volatile Exception failure;
+    private volatile Exception lastError;
+
+    MultipartTransfer(final BPTransfer transfer, final BPRandomAccessClient client, final BPClientFactory clientFactory,
+                      final FilePath filePath, final String remoteDirectory, final BPTransfer.TransferState state,
+                      final int connections, final BPBandwidthLimiter bandwidthLimiter) throws Exception {
+        this.transfer = transfer;
+        this.client = client;
+        this.clientFactory = clientFactory;
+        this.filePath = filePath;
+        this.remoteDirectory = remoteDirectory;
+        this.state = state;
+        this.bandwidthLimiter = bandwidthLimiter;
+        fileName = filePath.getName();
+        length = filePath.length();
+        partSize = Math.max(MIN_PART_SIZE, (length + connections - 1) / connections);
+        partCount = (int) ((length + partSize - 1) / partSize);
+        this.connections = Math.max(1, Math.min(connections, partCount));
+    }
+
+    int getPartCount() { return partCount; }
+
+    int getConnections() { return connections; }
+
+    int getErrors() { return errors.get(); }
+
+    /**
+     * @return the bytes read by the connections, including any part that had to be sent again
+     */
+    long getBytesSent() { return bytesSent.getBytes(); }
+
+    long getLength() { return length; }
+
+    void transfer() throws Exception {
+        state.beginMultipart(partCount);
+        for (int part = 0; part < partCount; part++) {
+            if (!state.isPartComplete(part))
+                pending.add(new Part(part));
+        }
+        remaining.set(pending.size());
+        final List<Future<?>> workers = new ArrayList<Future<?>>();
+        try {
+            for (int i = 1; i < connections; i++)
+                workers.add(WORKERS.submit(new Worker(null)));
+            new Worker(client).run();
+            for (Future<?> worker : workers)
+                waitFor(worker);
+        } finally {
+            for (Future<?> worker : workers)
+                worker.cancel(true);
+        }
+        if (!state.allPartsComplete()) {
+            if (failure != null) throw failure;
+            if (lastError != null) throw lastError;
+            throw new BapPublisherException(Messages.exception_multipartIncomplete(fileName));
+        }
+        // ranged writes never shorten the file, so drop anything left over from a longer previous upload
+        client.truncateFile(fileName, length);
+        state.endMultipart();
+    }
+
+    private void waitFor(final Future<?> worker) throws InterruptedException {
+        try {
+            worker.get();
+        } catch (ExecutionException ee) {
+            fail(ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee);
+        }
+    }
+
+    private void fail(final Exception exception) {
+        if (failure == null) failure = exception;
+    }
+
+    private void sendPart(final BPRandomAccessClient connection, final Part part) throws Exception {
+        final long offset = (long) part.index * partSize;
+        final long size = Math.min(partSize, length - offset);
+        final ProgressInputStream content = new ProgressInputStream(BPBandwidthLimiter.throttle(bandwidthLimiter,
+                new BoundedInputStream(filePath.readFromOffset(offset), size)));
+        content.setProgressListener(bytesSent, PROGRESS_BYTES, PROGRESS_INTERVAL_MILLIS);
+        try {
+            connection.writeFile(transfer, fileName, offset, content);
+        } finally {
+            content.close();
+        }
+        state.partComplete(part.index);
+        remaining.decrementAndGet();
+    }
+
+    private BPRandomAccessClient openConnection() throws Exception {
+        final BPClient connection = BPTransfer.openConnection(clientFactory, remoteDirectory);
+        if (!(connection instanceof BPRandomAccessClient)) {
+            clientFactory.closeClient(connection);
+            throw new BapPermanentException(Messages.exception_multipartNotSupported());
+        }
+        return (BPRandomAccessClient) connection;
+    }
+
+    private static final class Part {
+        private final int index;
+        private int attempts;
+        Part(final int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Takes parts from the queue until every part has been written. A part that fails goes back on the queue, so a worker keeps
+     * waiting while other workers still hold parts. A worker given a connection uses it and leaves it open, and stops after a
+     * failure; otherwise it opens its own connection and replaces it after a failure.
+     */
+    private final class Worker implements Runnable {
+
+        private final boolean ownsConnection;
+        private BPRandomAccessClient connection;
+
+        Worker(final BPRandomAccessClient connection) {
+            this.connection = connection;
+            ownsConnection = connection == null;
+        }
+
+        public void run() {
+            try {
+                while (remaining.get() > 0 && failure == null) {
+                    final Part part = pending.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (part != null && !send(part)) return;
+                }
+            } catch (InterruptedException ie) {
+                fail(ie);
+            } finally {
+                if (ownsConnection && connection != null) clientFactory.closeClient(connection);
+            }
+        }
+
+        private boolean send(final Part part) {
+            try {
+                if (connection == null) connection = openConnection();
+                sendPart(connection, part);
+                return true;
+            } catch (BapSessionLimitException bsle) {
+                // every session is in use, so leave the parts to the connections that are already open
+                pending.add(part);
+                return false;
+            } catch (Exception e) {
+                lastError = e;
+                errors.incrementAndGet();
+                part.attempts++;
+                if (part.attempts >= MAX_PART_ATTEMPTS) {
+                    fail(e);
+                    return false;
+                }
+                LOG.warn(Messages.log_multipartPartRetry(part.index, fileName, e.getLocalizedMessage()));
+                state.partRetried();
+                pending.add(part);
+                if (!ownsConnection) return false;
+                if (connection != null) clientFactory.closeClient(connection);
+                connection = null;
+                return true;
+            }
+        }
+
+    }
+
+}
@@ -55,12 +55,12 @@ public class ParamPublish implements Serializable {
             return SelectAllPubSelector.SELECT_ALL;
         final String regexp = buildInfo.getCurrentBuildEnv().getEnvVars().get(parameterName);
         if (regexp == null)
-            throw new BapPublisherException(Messages.exception_paramPublish_noParameter(parameterName));
+            throw new BapPermanentException(Messages.exception_paramPublish_noParameter(parameterName));
         try {
             final Pattern pattern = Pattern.compile(regexp);
             return new Selector(buildInfo, pattern);
         } catch (PatternSyntaxException pse) {
-            throw new BapPublisherException(Messages.exception_paramPublish_badPattern(parameterName, regexp, pse.getMessage()), pse);
+            throw new BapPermanentException(Messages.exception_paramPublish_badPattern(parameterName, regexp, pse.getMessage()), pse);
         }
     }
 
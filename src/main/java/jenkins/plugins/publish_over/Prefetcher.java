@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read the files that are about to be uploaded into memory on a thread of its own, so that reading the next files from slow
+ * storage overlaps with uploading the current one. At most maxFiles files and maxBytes bytes are held at once. A file that
+ * is larger than maxBytes, or that cannot be read, is left for the uploader to read itself, so that any error is reported
+ * where it would have been without the prefetcher.
+ */
+final class Prefetcher implements Runnable {
+
+    private static final Log LOG = LogFactory.getLog(Prefetcher.class);
+
+    private final FilePath[] files;
+    private final int maxFiles;
+    private final long maxBytes;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Map<Integer, byte[]> buffered = new HashMap<Integer, byte[]>();
+    private final Set<Integer> direct = new HashSet<Integer>();
+    private long bufferedBytes;
+    private int position;
+    private int wanted;
+    private boolean stopped;
+    private int prefetched;
+    private int waits;
+    private long waitNanos;
+
+    Prefetcher(final FilePath[] files, final int first, final int maxFiles, final long maxBytes) {
+        this.files = files;
+        this.maxFiles = maxFiles;
+        this.maxBytes = maxBytes;
+        position = first;
+        wanted = first;
+    }
+
+    void start() {
+        executor.submit(this);
+    }
+
+    /**
+     * Give up on the files that were prefetched and not taken, and stop reading
+     */
+    void stop() {
+        synchronized (this) {
+            stopped = true;
+            buffered.clear();
+            bufferedBytes = 0;
+            notifyAll();
+        }
+        executor.shutdownNow();
+    }
+
+    synchronized int getPrefetched() { return prefetched; }
+
+    synchronized int getWaits() { return waits; }
+
+    synchronized long getWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(waitNanos); }
+
+    /**
+     * Files before the index that were prefetched and not taken, because they were uploaded in some other way, are dropped.
+     * @return the contents of the file at the index, waiting while it is being read, or null if the uploader should read it
+     */
+    synchronized InputStream take(final int index) throws InterruptedException {
+        discardBefore(index);
+        if (!isReady(index)) {
+            waits++;
+            final long start = System.nanoTime();
+            while (!isReady(index))
+                wait();
+            waitNanos += System.nanoTime() - start;
+        }
+        final byte[] contents = buffered.remove(index);
+        wanted = index + 1;
+        if (contents != null) bufferedBytes -= contents.length;
+        notifyAll();
+        return contents == null ? null : new ByteArrayInputStream(contents);
+    }
+
+    private boolean isReady(final int index) {
+        return stopped || buffered.containsKey(index) || direct.contains(index);
+    }
+
+    private void discardBefore(final int index) {
+        wanted = Math.max(wanted, index);
+        final Iterator<Map.Entry<Integer, byte[]>> entries = buffered.entrySet().iterator();
+        while (entries.hasNext()) {
+            final Map.Entry<Integer, byte[]> entry = entries.next();
+            if (entry.getKey() < index) {
+                bufferedBytes -= entry.getValue().length;
+                entries.remove();
+            }
+        }
+        notifyAll();
+    }
+
+    public void run() {
+        try {
+            while (prefetchNext()) {
+                // keep reading ahead
+            }
+        } catch (InterruptedException ie) {
+            // stopped
+        } finally {
+            synchronized (this) {
+                stopped = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private boolean prefetchNext() throws InterruptedException {
+        final int index;
+        synchronized (this) {
+            position = Math.max(position, wanted);
+            if (stopped || position >= files.length) return false;
+            index = position;
+        }
+        final long length = getLength(files[index]);
+        synchronized (this) {
+            if (length < 0 || length > maxBytes) return leaveToUploader(index);
+            while (!stopped && index >= wanted && (buffered.size() >= maxFiles || bufferedBytes + length > maxBytes))
+                wait();
+            if (stopped || index < wanted) return true;
+            bufferedBytes += length;
+        }
+        final byte[] contents = read(files[index]);
+        synchronized (this) {
+            bufferedBytes -= length;
+            position = index + 1;
+            if (contents == null) return leaveToUploader(index);
+            if (!stopped && index >= wanted) {
+                buffered.put(index, contents);
+                bufferedBytes += contents.length;
+                prefetched++;
+            }
+            notifyAll();
+            return true;
+        }
+    }
+
+    private boolean leaveToUploader(final int index) {
+        direct.add(index);
+        position = index + 1;
+        notifyAll();
+        return true;
+    }
+
+    private static long getLength(final FilePath filePath) throws InterruptedException {
+        try {
+            return filePath.length();
+        } catch (InterruptedException ie) {
+            throw ie;
+        } catch (Exception e) {
+            LOG.debug(Messages.log_prefetchFailed(filePath.getName(), e.getLocalizedMessage()), e);
+            return -1;
+        }
+    }
+
+    private static byte[] read(final FilePath filePath) throws InterruptedException {
+        InputStream content = null;
+        try {
+            content = filePath.read();
+            return IOUtils.toByteArray(content);
+        } catch (InterruptedException ie) {
+            throw ie;
+        } catch (Exception e) {
+            LOG.debug(Messages.log_prefetchFailed(filePath.getName(), e.getLocalizedMessage()), e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(content);
+        }
+    }
+
+}
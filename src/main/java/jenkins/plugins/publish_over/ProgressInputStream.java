@@ -6,32 +6,58 @@ import java.beans.PropertyChangeSupport;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Counts the bytes read through it. A {@link ProgressListener} is told about them once at least notifyBytes have been read or
+ * notifyIntervalMillis have passed since it was last told, and when the stream is closed. Property change listeners are told
+ * about every read by a progress listener that adapts to them, so nothing is allocated for them unless one has been added.
+ */
 public class ProgressInputStream extends FilterInputStream {
-    private final PropertyChangeSupport propertyChangeSupport;
     private volatile long totalNumBytesRead;
+    private ProgressListener progressListener;
+    private long notifyBytes;
+    private long notifyIntervalNanos;
+    private long unreportedBytes;
+    private long lastNotified;
+    private PropertyChangeAdapter propertyChangeAdapter;
 
     public ProgressInputStream(InputStream in) {
         super(in);
-        this.propertyChangeSupport = new PropertyChangeSupport(this);
     }
 
     public long getTotalNumBytesRead() {
         return totalNumBytesRead;
     }
 
-    public void addPropertyChangeListener(PropertyChangeListener l) {
-        propertyChangeSupport.addPropertyChangeListener(l);
+    /**
+     * Once a property change listener has been added, the progress listener is told about every read along with it
+     */
+    public synchronized void setProgressListener(ProgressListener progressListener, long notifyBytes, long notifyIntervalMillis) {
+        if (propertyChangeAdapter != null)
+            propertyChangeAdapter.next = progressListener;
+        else
+            listen(progressListener, notifyBytes, notifyIntervalMillis);
     }
 
-    public void removePropertyChangeListener(PropertyChangeListener l) {
-        propertyChangeSupport.removePropertyChangeListener(l);
+    public synchronized void addPropertyChangeListener(PropertyChangeListener l) {
+        if (propertyChangeAdapter == null) {
+            propertyChangeAdapter = new PropertyChangeAdapter(this, progressListener);
+            listen(propertyChangeAdapter, 1, 0);
+        }
+        propertyChangeAdapter.propertyChangeSupport.addPropertyChangeListener(l);
+    }
+
+    public synchronized void removePropertyChangeListener(PropertyChangeListener l) {
+        if (propertyChangeAdapter != null)
+            propertyChangeAdapter.propertyChangeSupport.removePropertyChangeListener(l);
     }
 
     @Override
     public int read() throws IOException {
         int b = super.read();
-        updateProgress(1);
+        if (b != -1)
+            updateProgress(1);
         return b;
     }
 
@@ -60,13 +86,63 @@ public class ProgressInputStream extends FilterInputStream {
         return false;
     }
 
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            notifyProgressListener();
+        }
+    }
+
+    private void listen(ProgressListener progressListener, long notifyBytes, long notifyIntervalMillis) {
+        this.progressListener = progressListener;
+        this.notifyBytes = notifyBytes;
+        this.notifyIntervalNanos = TimeUnit.MILLISECONDS.toNanos(notifyIntervalMillis);
+        this.lastNotified = System.nanoTime();
+    }
+
     private long updateProgress(long numBytesRead) {
         if (numBytesRead > 0) {
-            long oldTotalNumBytesRead = this.totalNumBytesRead;
             this.totalNumBytesRead += numBytesRead;
-            propertyChangeSupport.firePropertyChange("totalNumBytesRead", oldTotalNumBytesRead, this.totalNumBytesRead);
+            if (progressListener != null) {
+                unreportedBytes += numBytesRead;
+                if (unreportedBytes >= notifyBytes || System.nanoTime() - lastNotified >= notifyIntervalNanos)
+                    notifyProgressListener();
+            }
         }
 
         return numBytesRead;
     }
+
+    private void notifyProgressListener() {
+        if (progressListener == null || unreportedBytes == 0)
+            return;
+        long bytes = unreportedBytes;
+        unreportedBytes = 0;
+        lastNotified = System.nanoTime();
+        progressListener.progressed(bytes, totalNumBytesRead);
+    }
+
+    /**
+     * Tells the property change listeners about every read, and passes it on to any progress listener that was set as well
+     */
+    private static final class PropertyChangeAdapter implements ProgressListener {
+        private final PropertyChangeSupport propertyChangeSupport;
+        private volatile ProgressListener next;
+
+        PropertyChangeAdapter(Object source, ProgressListener next) {
+            this.propertyChangeSupport = new PropertyChangeSupport(source);
+            this.next = next;
+        }
+
+        @Override
+        public void progressed(long bytes, long totalBytes) {
+            if (propertyChangeSupport.hasListeners(null))
+                propertyChangeSupport.firePropertyChange("totalNumBytesRead", totalBytes - bytes, totalBytes);
+            ProgressListener listener = next;
+            if (listener != null)
+                listener.progressed(bytes, totalBytes);
+        }
+    }
 }
\ No newline at end of file
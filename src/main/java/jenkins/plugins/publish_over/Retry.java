@@ -30,6 +30,7 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.lang.builder.ToStringStyle;
 
 import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Retry implements Serializable {
 
@@ -37,6 +38,10 @@ public class Retry implements Serializable {
 
     private final int retries;
     private final long retryDelay;
+    private BPRetryBackoff backoff;
+    private long maxRetryDelay;
+    private long retryBudget;
+    private int fileRetries;
 
     public Retry(final int retries, final long retryDelay) {
         this.retries = retries;
@@ -51,18 +56,56 @@ public class Retry implements Serializable {
         return retryDelay;
     }
 
+    public BPRetryBackoff getBackoff() { return backoff; }
+    public void setBackoff(final BPRetryBackoff backoff) { this.backoff = backoff; }
+
+    public long getMaxRetryDelay() { return maxRetryDelay; }
+    public void setMaxRetryDelay(final long maxRetryDelay) { this.maxRetryDelay = maxRetryDelay; }
+
+    public long getRetryBudget() { return retryBudget; }
+    public void setRetryBudget(final long retryBudget) { this.retryBudget = retryBudget; }
+
+    public int getFileRetries() { return fileRetries; }
+    public void setFileRetries(final int fileRetries) { this.fileRetries = fileRetries; }
+
+    /**
+     * @param attempt the retry about to be made, starting at 1
+     * @param previousDelay the delay returned for the previous retry, or 0 before the first retry
+     * @return how long to wait before the retry, never more than maxRetryDelay if that is set
+     */
+    public long getDelay(final int attempt, final long previousDelay) {
+        final BPRetryBackoff policy = backoff == null ? BPRetryBackoff.FIXED : backoff;
+        final long delay = policy.nextDelay(retryDelay, previousDelay, attempt, ThreadLocalRandom.current());
+        return maxRetryDelay > 0 ? Math.min(delay, maxRetryDelay) : delay;
+    }
+
+    /**
+     * @return true if there is no retry budget, or if waiting for delay would still leave the retries within it
+     */
+    public boolean isWithinBudget(final long elapsed, final long delay) {
+        return retryBudget <= 0 || elapsed + delay <= retryBudget;
+    }
+
     protected HashCodeBuilder addToHashCode(final HashCodeBuilder builder) {
-        return builder.append(retries).append(retryDelay);
+        return builder.append(retries).append(retryDelay).append(backoff).append(maxRetryDelay).append(retryBudget).append(fileRetries);
     }
 
     protected EqualsBuilder addToEquals(final EqualsBuilder builder, final Retry that) {
         return builder.append(retries, that.retries)
-            .append(retryDelay, that.retryDelay);
+            .append(retryDelay, that.retryDelay)
+            .append(backoff, that.backoff)
+            .append(maxRetryDelay, that.maxRetryDelay)
+            .append(retryBudget, that.retryBudget)
+            .append(fileRetries, that.fileRetries);
     }
 
     protected ToStringBuilder addToToString(final ToStringBuilder builder) {
         return builder.append("retries", retries)
-            .append("retryDelay", retryDelay);
+            .append("retryDelay", retryDelay)
+            .append("backoff", backoff)
+            .append("maxRetryDelay", maxRetryDelay)
+            .append("retryBudget", retryBudget)
+            .append("fileRetries", fileRetries);
     }
 
     public boolean equals(final Object that) {
@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+import hudson.remoting.FastPipedInputStream;
+import hudson.remoting.FastPipedOutputStream;
+import hudson.remoting.RemoteOutputStream;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Read the files to publish from the agent as one continuous stream instead of opening a remote stream for each file, so the
+ * number of remoting round trips no longer grows with the number of files. A callable on the agent writes the length and then
+ * the contents of each file, in order, and the controller hands each file to the client as soon as it arrives.
+ */
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+final class StreamedTransfer {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataInputStream input;
+    private final FastPipedInputStream pipe;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Future<Void> sending;
+    private Entry entry;
+
+    StreamedTransfer(final FilePath baseDirectory, final List<FilePath> files) throws IOException {
+        final ArrayList<String> paths = new ArrayList<String>();
+        for (FilePath file : files)
+            paths.add(file.getRemote());
+        pipe = new FastPipedInputStream();
+        input = new DataInputStream(new BufferedInputStream(pipe, BUFFER_SIZE));
+        final Sender sender = new Sender(paths, new RemoteOutputStream(new FastPipedOutputStream(pipe)));
+        sending = executor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                return baseDirectory.act(sender);
+            }
+        });
+    }
+
+    /**
+     * @return the contents of the next file, which must be read before asking for the one after it, and need not be closed
+     */
+    InputStream next(final FilePath filePath) throws Exception {
+        if (entry != null) entry.skipRemaining();
+        final long length;
+        try {
+            length = input.readLong();
+        } catch (EOFException eof) {
+            throw senderFailure(eof, filePath);
+        }
+        entry = new Entry(filePath, length);
+        return entry;
+    }
+
+    /**
+     * Wait for the agent to finish sending, and fail if it could not send everything
+     */
+    void finish() throws Exception {
+        try {
+            sending.get();
+        } catch (ExecutionException ee) {
+            throw ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+        }
+    }
+
+    /**
+     * Stop reading, which makes the agent stop writing if it has not finished
+     */
+    void close() throws IOException {
+        try {
+            pipe.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Exception senderFailure(final EOFException eof, final FilePath filePath) throws InterruptedException {
+        try {
+            sending.get();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof Exception) return (Exception) ee.getCause();
+        }
+        return new BapPublisherException(Messages.exception_streamEnded(filePath.getName()), eof);
+    }
+
+    /**
+     * @return the path of the file relative to the base directory, worked out without asking the agent, or null if the path
+     * of the file does not start with that of the base directory
+     */
+    static String getRelativePath(final FilePath baseDirectory, final FilePath filePath) {
+        final String base = baseDirectory.getRemote().replace('\\', '/');
+        final String path = filePath.getRemote().replace('\\', '/');
+        final String prefix = base.endsWith("/") ? base : base + "/";
+        return path.startsWith(prefix) ? path.substring(prefix.length()) : null;
+    }
+
+    /**
+     * The contents of one file in the stream, which fails rather than ending early if the stream ends before the whole file
+     * has been read, so that a truncated file is never stored
+     */
+    private final class Entry extends InputStream {
+
+        private final FilePath filePath;
+        private long remaining;
+
+        Entry(final FilePath filePath, final long length) {
+            this.filePath = filePath;
+            remaining = length;
+        }
+
+        public int read() throws IOException {
+            if (remaining == 0) return -1;
+            final int read = input.read();
+            if (read == -1) throw ended();
+            remaining--;
+            return read;
+        }
+
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (length == 0) return 0;
+            if (remaining == 0) return -1;
+            final int read = input.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read == -1) throw ended();
+            remaining -= read;
+            return read;
+        }
+
+        public int available() throws IOException {
+            return (int) Math.min(input.available(), remaining);
+        }
+
+        public void close() {
+            // the stream carries the files that follow
+        }
+
+        private void skipRemaining() throws IOException {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // discard what the client did not read
+            }
+        }
+
+        private EOFException ended() {
+            return new EOFException(Messages.exception_streamEnded(filePath.getName()));
+        }
+
+    }
+
+    /**
+     * Runs on the agent, and writes each file as its length followed by its contents. A file that has grown since its length
+     * was written is cut short at that length, and one that has shrunk fails the stream.
+     */
+    static final class Sender extends MasterToSlaveFileCallable<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<String> paths;
+        private final RemoteOutputStream out;
+
+        Sender(final ArrayList<String> paths, final RemoteOutputStream out) {
+            this.paths = paths;
+            this.out = out;
+        }
+
+        public Void invoke(final File baseDirectory, final VirtualChannel channel) throws IOException {
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            try {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                for (String path : paths) {
+                    final File file = new File(path);
+                    final InputStream content = new FileInputStream(file);
+                    try {
+                        final long length = file.length();
+                        output.writeLong(length);
+                        send(file, content, length, output, buffer);
+                    } finally {
+                        content.close();
+                    }
+                }
+            } finally {
+                output.close();
+            }
+            return null;
+        }
+
+        private static void send(final File file, final InputStream content, final long length, final DataOutputStream output,
+                                 final byte[] buffer) throws IOException {
+            long remaining = length;
+            while (remaining > 0) {
+                final int read = content.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) throw new IOException(Messages.exception_streamedFileChanged(file.getPath()));
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+
+    }
+
+}
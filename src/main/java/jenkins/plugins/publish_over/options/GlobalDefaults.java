@@ -24,6 +24,8 @@
 
 package jenkins.plugins.publish_over.options;
 
+import jenkins.plugins.publish_over.BPCompression;
+import jenkins.plugins.publish_over.BPRetryBackoff;
 import jenkins.plugins.publish_over.FileFinder;
 
 public class GlobalDefaults implements GlobalOptions  {
@@ -40,6 +42,26 @@ public class GlobalDefaults implements GlobalOptions  {
         return false;
     }
 
+    public boolean isReuseConnections() {
+        return false;
+    }
+
+    public int getParallelism() {
+        return 1;
+    }
+
+    public boolean isPublishInOneSession() {
+        return false;
+    }
+
+    public boolean isSendUsedEnvVarsOnly() {
+        return false;
+    }
+
+    public boolean isWriteTrace() {
+        return false;
+    }
+
     public String getParameterName() {
         return null;
     }
@@ -64,6 +86,18 @@ public class GlobalDefaults implements GlobalOptions  {
         return false;
     }
 
+    public int getParallelTransfers() {
+        return 1;
+    }
+
+    public boolean isVerboseSummary() {
+        return false;
+    }
+
+    public boolean isBufferConsole() {
+        return false;
+    }
+
     public int getRetries() {
         return DEFAULT_RETRIES;
     }
@@ -72,6 +106,22 @@ public class GlobalDefaults implements GlobalOptions  {
         return DEFAULT_RETRY_DELAY;
     }
 
+    public BPRetryBackoff getBackoff() {
+        return BPRetryBackoff.FIXED;
+    }
+
+    public long getMaxRetryDelay() {
+        return 0;
+    }
+
+    public long getRetryBudget() {
+        return 0;
+    }
+
+    public int getFileRetries() {
+        return 0;
+    }
+
     public String getSourceFiles() {
         return null;
     }
@@ -112,4 +162,40 @@ public class GlobalDefaults implements GlobalOptions  {
         return FileFinder.DEFAULT_PATTERN_SEPARATOR;
     }
 
+    public BPCompression getCompression() {
+        return null;
+    }
+
+    public boolean isRewriteChangedBlocks() {
+        return false;
+    }
+
+    public int getMultipartThreshold() {
+        return 0;
+    }
+
+    public int getMultipartConnections() {
+        return 0;
+    }
+
+    public boolean isMultipartAdaptive() {
+        return false;
+    }
+
+    public int getHedgeThreshold() {
+        return 0;
+    }
+
+    public boolean isStreamFromAgent() {
+        return false;
+    }
+
+    public int getPrefetchFiles() {
+        return 0;
+    }
+
+    public int getPrefetchMemory() {
+        return 0;
+    }
+
 }
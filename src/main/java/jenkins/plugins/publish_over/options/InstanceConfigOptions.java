@@ -32,4 +32,24 @@ public interface InstanceConfigOptions {
 
     boolean isAlwaysPublishFromMaster();
 
+    default boolean isReuseConnections() {
+        return false;
+    }
+
+    default int getParallelism() {
+        return 1;
+    }
+
+    default boolean isPublishInOneSession() {
+        return false;
+    }
+
+    default boolean isSendUsedEnvVarsOnly() {
+        return false;
+    }
+
+    default boolean isWriteTrace() {
+        return false;
+    }
+
 }
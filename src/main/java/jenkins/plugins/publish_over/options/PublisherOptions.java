@@ -34,4 +34,16 @@ public interface PublisherOptions {
 
     boolean isVerbose();
 
+    default int getParallelTransfers() {
+        return 1;
+    }
+
+    default boolean isVerboseSummary() {
+        return false;
+    }
+
+    default boolean isBufferConsole() {
+        return false;
+    }
+
 }
@@ -24,6 +24,8 @@
 
 package jenkins.plugins.publish_over.options;
 
+import jenkins.plugins.publish_over.BPRetryBackoff;
+
 public interface RetryOptions {
 
     int DEFAULT_RETRIES = 0;
@@ -33,4 +35,20 @@ public interface RetryOptions {
 
     long getRetryDelay();
 
+    default BPRetryBackoff getBackoff() {
+        return BPRetryBackoff.FIXED;
+    }
+
+    default long getMaxRetryDelay() {
+        return 0;
+    }
+
+    default long getRetryBudget() {
+        return 0;
+    }
+
+    default int getFileRetries() {
+        return 0;
+    }
+
 }
@@ -24,6 +24,8 @@
 
 package jenkins.plugins.publish_over.options;
 
+import jenkins.plugins.publish_over.BPCompression;
+
 public interface TransferOptions {
 
     String getSourceFiles();
@@ -46,4 +48,40 @@ public interface TransferOptions {
 
     String getPatternSeparator();
 
+    default BPCompression getCompression() {
+        return null;
+    }
+
+    default boolean isRewriteChangedBlocks() {
+        return false;
+    }
+
+    default int getMultipartThreshold() {
+        return 0;
+    }
+
+    default int getMultipartConnections() {
+        return 0;
+    }
+
+    default boolean isMultipartAdaptive() {
+        return false;
+    }
+
+    default int getHedgeThreshold() {
+        return 0;
+    }
+
+    default boolean isStreamFromAgent() {
+        return false;
+    }
+
+    default int getPrefetchFiles() {
+        return 0;
+    }
+
+    default int getPrefetchMemory() {
+        return 0;
+    }
+
 }
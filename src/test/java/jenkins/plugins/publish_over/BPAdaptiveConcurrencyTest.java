@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import jenkins.plugins.publish_over.helper.BPHostConfigurationFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BPAdaptiveConcurrencyTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long SAMPLE = BPAdaptiveConcurrency.MIN_SAMPLE_BYTES;
+
+    private final BPAdaptiveConcurrency controller = new BPAdaptiveConcurrency();
+
+    @AfterEach
+    void tearDown() {
+        BPAdaptiveConcurrency.clear();
+    }
+
+    @Test
+    void testLearnedCountIsSharedForHostConfiguration() {
+        final BPHostConfiguration hostConfig = new BPHostConfigurationFactory().create("ADAPTIVE-CONFIG");
+        assertSame(BPAdaptiveConcurrency.get(hostConfig), BPAdaptiveConcurrency.get(hostConfig));
+    }
+
+    @Test
+    void testStartsLowAndIsCappedToMaximum() {
+        assertEquals(BPAdaptiveConcurrency.INITIAL_CONNECTIONS, controller.getConnections(8));
+        assertEquals(1, controller.getConnections(1));
+    }
+
+    @Test
+    void testIncreasesWhileThroughputHoldsUp() {
+        assertEquals(3, controller.record(2, SAMPLE, SECOND, false));
+        assertEquals(4, controller.record(3, SAMPLE * 3 / 2, SECOND, false));
+        assertEquals(4, controller.getConnections(8));
+        assertEquals(5, controller.record(4, SAMPLE * 29 / 20, SECOND, false));
+    }
+
+    @Test
+    void testHalvesWhenThroughputFalls() {
+        controller.record(7, SAMPLE, SECOND, false);
+        assertEquals(4, controller.record(8, SAMPLE, SECOND * 2, false));
+    }
+
+    @Test
+    void testHalvesOnErrors() {
+        assertEquals(3, controller.record(6, SAMPLE, SECOND, true));
+        controller.failed(3);
+        assertEquals(1, controller.getConnections(8));
+    }
+
+    @Test
+    void testWaitsForFullSampleBeforeAdjusting() {
+        assertEquals(2, controller.getConnections(8));
+        controller.record(2, SAMPLE, SECOND, false);
+        assertEquals(3, controller.record(3, SAMPLE / 4, SECOND / 8, false));
+        assertEquals(3, controller.record(3, SAMPLE / 4, SECOND, false));
+        assertEquals(3, controller.record(3, SAMPLE / 4, SECOND, false));
+        assertEquals(1, controller.record(3, SAMPLE / 4, SECOND, false));
+    }
+
+    @Test
+    void testSampleRestartsWhenConnectionsChange() {
+        controller.record(4, SAMPLE, SECOND, false);
+        controller.record(5, SAMPLE / 2, SECOND * 10, false);
+        assertEquals(5, controller.record(2, SAMPLE / 2, SECOND / 2, false));
+        assertEquals(3, controller.record(2, SAMPLE / 2, SECOND / 2, false));
+    }
+
+}
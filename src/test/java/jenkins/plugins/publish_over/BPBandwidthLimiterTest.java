@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import jenkins.plugins.publish_over.helper.BPHostConfigurationFactory;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BPBandwidthLimiterTest {
+
+    private final BPHostConfiguration hostConfig = new BPHostConfigurationFactory().create("THROTTLED-CONFIG");
+
+    @AfterEach
+    void tearDown() {
+        BPBandwidthLimiter.clear();
+    }
+
+    @Test
+    void testNoLimitByDefault() {
+        assertNull(BPBandwidthLimiter.get(hostConfig));
+        final InputStream inputStream = new ByteArrayInputStream(new byte[1]);
+        assertSame(inputStream, BPBandwidthLimiter.throttle(null, inputStream));
+    }
+
+    @Test
+    void testSharedBetweenPublishes() {
+        hostConfig.setBandwidthLimit(64);
+        assertSame(BPBandwidthLimiter.get(hostConfig), BPBandwidthLimiter.get(hostConfig));
+        assertEquals(64 * BPBandwidthLimiter.KILOBYTE, BPBandwidthLimiter.get(hostConfig).getRate());
+    }
+
+    @Test
+    void testReadIsThrottledOnceBurstIsUsed() throws Exception {
+        hostConfig.setBandwidthLimit(64);
+        final byte[] contents = new byte[128 * BPBandwidthLimiter.KILOBYTE];
+        final long start = System.currentTimeMillis();
+        final byte[] read = IOUtils.toByteArray(BPBandwidthLimiter.throttle(BPBandwidthLimiter.get(hostConfig),
+                new ByteArrayInputStream(contents)));
+        assertEquals(contents.length, read.length);
+        assertTrue(System.currentTimeMillis() - start >= 500);
+    }
+
+    @Test
+    void testAgentTakesTokensFromControllerInGrants() throws Exception {
+        hostConfig.setBandwidthLimit(64);
+        final BPBandwidthLimiter controller = BPBandwidthLimiter.get(hostConfig);
+        final BPBandwidthGrants fromController = BPBandwidthLimiter.createGrants();
+        final AtomicInteger grants = new AtomicInteger();
+        final BPBandwidthLimiter agent = BPBandwidthLimiter.get(hostConfig, (configName, bytes) -> {
+            grants.incrementAndGet();
+            fromController.acquire(configName, bytes);
+        });
+        assertNotSame(controller, agent);
+        final byte[] contents = new byte[128 * BPBandwidthLimiter.KILOBYTE];
+        final long start = System.currentTimeMillis();
+        final byte[] read = IOUtils.toByteArray(BPBandwidthLimiter.throttle(agent, new ByteArrayInputStream(contents)));
+        assertEquals(contents.length, read.length);
+        assertTrue(System.currentTimeMillis() - start >= 500);
+        assertEquals(8, grants.get());
+    }
+
+}
@@ -26,15 +26,27 @@ package jenkins.plugins.publish_over;
 
 import hudson.FilePath;
 import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
 import jenkins.plugins.publish_over.helper.BPBuildInfoFactory;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.TreeMap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class BPBuildInfoTest {
 
@@ -63,4 +75,73 @@ class BPBuildInfoTest {
         assertEquals(relDir.replace(".", ""), buildInfo.getRelativeDir(path, null));
     }
 
+    @Test
+    void testSummaryOnlyLeavesOutLinesForEachFile() {
+        final ByteArrayOutputStream console = new ByteArrayOutputStream();
+        final BPBuildInfo verboseInfo = new BPBuildInfo(new StreamTaskListener(console, StandardCharsets.UTF_8), "",
+                new FilePath(new File("")), new BPBuildInfoFactory().createEmptyBuildEnv(), null);
+        verboseInfo.setVerbose(true);
+        verboseInfo.setSummarizing(true);
+        verboseInfo.printFileIfVerbose("file line");
+        verboseInfo.printIfVerbose("connection line");
+        verboseInfo.setSummarizing(false);
+        verboseInfo.printFileIfVerbose("another file line");
+        assertEquals("connection line" + System.lineSeparator() + "another file line" + System.lineSeparator(),
+                console.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testOnlyEffectiveEnvironmentIsSerialized() throws Exception {
+        final TreeMap<String, String> effective = createEnvVars("VAR_", 2000);
+        final BPBuildInfo promotion = new BPBuildInfo(null, "", new FilePath(new File("")),
+                new BPBuildEnv(createEnvVars("CURRENT_", 2000), baseDir, Calendar.getInstance()),
+                new BPBuildEnv(createEnvVars("TARGET_", 2000), baseDir, Calendar.getInstance()));
+        promotion.setEnvVars(effective);
+        final byte[] serialized = serialize(promotion);
+        // allow for the two build environments without their variables, mostly the build time calendars
+        assertTrue(serialized.length < serialize(effective).length + 4096, "serialized size " + serialized.length);
+        final BPBuildInfo received = (BPBuildInfo) deserialize(serialized);
+        assertEquals(effective, received.getEnvVars());
+        assertNull(received.getCurrentBuildEnv().getEnvVars());
+        assertEquals(baseDir, received.getTargetBuildEnv().getBaseDirectory());
+    }
+
+    @Test
+    void testOnlyVariablesUsedByPublishersAreSerialized() throws Exception {
+        final TreeMap<String, String> envVars = createEnvVars("VAR_", 2000);
+        buildInfo.setListener(null);
+        buildInfo.setEnvVars(envVars);
+        final ArrayList<BPTransfer> transfers = new ArrayList<>();
+        transfers.add(new BPTransfer("${VAR_1}/**", "$VAR_2", "", false, false));
+        final BapPublisher publisher = new BapPublisher("config", false, transfers, false, false, null, null, null);
+        buildInfo.setEnvVarsToSend(BPMacroScanner.findVariables(Collections.singletonList(publisher)));
+        final byte[] serialized = serialize(buildInfo);
+        assertTrue(serialized.length < 4096, "serialized size " + serialized.length);
+        final TreeMap<String, String> expected = new TreeMap<>();
+        expected.put("VAR_1", envVars.get("VAR_1"));
+        expected.put("VAR_2", envVars.get("VAR_2"));
+        assertEquals(expected, ((BPBuildInfo) deserialize(serialized)).getEnvVars());
+    }
+
+    private static TreeMap<String, String> createEnvVars(final String prefix, final int count) {
+        final TreeMap<String, String> envVars = new TreeMap<>();
+        for (int i = 0; i < count; i++)
+            envVars.put(prefix + i, "value of environment variable " + i);
+        return envVars;
+    }
+
+    private static byte[] serialize(final Serializable object) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(final byte[] serialized) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
 }
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import jenkins.plugins.publish_over.helper.BPBuildInfoFactory;
+import jenkins.plugins.publish_over.helper.BPHostConfigurationFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BPCircuitBreakerTest {
+
+    private final BPBuildInfo buildInfo = new BPBuildInfoFactory().createEmpty();
+    private final BPHostConfiguration hostConfig = new BPHostConfigurationFactory().create("BREAKER-CONFIG");
+    private final Exception connectFailure = new BapConnectException(new IOException("Connection refused"));
+
+    @AfterEach
+    void tearDown() {
+        BPCircuitBreaker.clear();
+    }
+
+    @Test
+    void testDisabledByDefault() {
+        assertNull(BPCircuitBreaker.get(hostConfig));
+    }
+
+    @Test
+    void testUnnamedConfigurationHasNoBreaker() {
+        hostConfig.setName(null);
+        assertNull(createBreaker(2, 60000));
+    }
+
+    @Test
+    void testOpensAfterConsecutiveConnectFailures() {
+        final BPCircuitBreaker breaker = createBreaker(2, 60000);
+        failToConnect(breaker);
+        assertEquals(BPCircuitBreaker.State.CLOSED, breaker.getState());
+        failToConnect(breaker);
+        assertEquals(BPCircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(BapPublisherException.class, () -> breaker.beforePublish(buildInfo));
+    }
+
+    @Test
+    void testOtherFailuresDoNotCount() {
+        final BPCircuitBreaker breaker = createBreaker(2, 60000);
+        failToConnect(breaker);
+        breaker.beforePublish(buildInfo);
+        breaker.afterPublish(buildInfo, new BapTransferException(new IOException("Disk full"), null));
+        failToConnect(breaker);
+        assertEquals(BPCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(1, breaker.getConsecutiveFailures());
+    }
+
+    @Test
+    void testProbeClosesBreaker() throws Exception {
+        final BPCircuitBreaker breaker = createBreaker(1, 1);
+        failToConnect(breaker);
+        Thread.sleep(10);
+        breaker.beforePublish(buildInfo);
+        assertEquals(BPCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // only one probe at a time
+        assertThrows(BapPublisherException.class, () -> breaker.beforePublish(buildInfo));
+        breaker.afterPublish(buildInfo, null);
+        assertEquals(BPCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void testFailedProbeReopensBreaker() throws Exception {
+        final BPCircuitBreaker breaker = createBreaker(1, 1);
+        failToConnect(breaker);
+        Thread.sleep(10);
+        failToConnect(breaker);
+        assertEquals(BPCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private BPCircuitBreaker createBreaker(final int threshold, final long openTime) {
+        hostConfig.setCircuitBreakerThreshold(threshold);
+        hostConfig.setCircuitBreakerOpenTime(openTime);
+        return BPCircuitBreaker.get(hostConfig);
+    }
+
+    private void failToConnect(final BPCircuitBreaker breaker) {
+        breaker.beforePublish(buildInfo);
+        breaker.afterPublish(buildInfo, connectFailure);
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import jenkins.plugins.publish_over.helper.BPBuildInfoFactory;
+import jenkins.plugins.publish_over.helper.BPHostConfigurationFactory;
+import org.easymock.EasyMock;
+import org.easymock.IMocksControl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BPConnectionPoolTest {
+
+    private final IMocksControl mockControl = EasyMock.createStrictControl();
+    private final BPReusableClient client = mockControl.createMock(BPReusableClient.class);
+    private final BPReusableClient other = mockControl.createMock(BPReusableClient.class);
+    private final BPBuildInfo buildInfo = new BPBuildInfoFactory().createEmpty();
+    private final BPHostConfiguration hostConfig = new BPHostConfigurationFactory().create("POOL-CONFIG");
+
+    @AfterEach
+    void tearDown() {
+        BPConnectionPool.clear();
+    }
+
+    @Test
+    void testDisabledByDefault() {
+        assertNull(BPConnectionPool.get(hostConfig, null));
+    }
+
+    @Test
+    void testReturnedConnectionIsReused() {
+        expect(client.changeToInitialDirectory()).andReturn(true);
+        expect(client.isConnected()).andReturn(true);
+        client.bind(buildInfo, null);
+        mockControl.replay();
+        final BPConnectionPool pool = createPool(2);
+        assertTrue(pool.release(borrow(pool, client), true));
+        assertSame(client, borrow(pool, other).getClient());
+        assertEquals(1, pool.getCreated());
+        assertEquals(1, pool.getReused());
+        assertEquals(1, pool.getLeased());
+        mockControl.verify();
+    }
+
+    @Test
+    void testBrokenConnectionIsDiscardedOnBorrow() {
+        expect(client.changeToInitialDirectory()).andReturn(true);
+        expect(client.isConnected()).andReturn(false);
+        client.disconnectQuietly();
+        mockControl.replay();
+        final BPConnectionPool pool = createPool(2);
+        pool.release(borrow(pool, client), true);
+        assertSame(other, borrow(pool, other).getClient());
+        assertEquals(1, pool.getDiscarded());
+        mockControl.verify();
+    }
+
+    @Test
+    void testConnectionFromFailedPublishIsClosed() {
+        client.disconnectQuietly();
+        mockControl.replay();
+        final BPConnectionPool pool = createPool(2);
+        assertFalse(pool.release(borrow(pool, client), false));
+        assertEquals(0, pool.getIdle());
+        mockControl.verify();
+    }
+
+    @Test
+    void testConnectionsBeyondPoolSizeAreClosed() {
+        expect(client.changeToInitialDirectory()).andReturn(true);
+        client.disconnectQuietly();
+        expect(other.changeToInitialDirectory()).andReturn(true);
+        other.disconnectQuietly();
+        mockControl.replay();
+        final BPConnectionPool pool = createPool(1);
+        final BPConnectionPool.Lease first = borrow(pool, client);
+        final BPConnectionPool.Lease second = borrow(pool, other);
+        assertFalse(pool.release(first, true));
+        assertTrue(pool.release(second, true));
+        assertEquals(1, pool.getIdle());
+        BPConnectionPool.clear();
+        mockControl.verify();
+    }
+
+    @Test
+    void testIdleConnectionExpires() throws Exception {
+        expect(client.changeToInitialDirectory()).andReturn(true);
+        client.disconnectQuietly();
+        mockControl.replay();
+        hostConfig.setPoolIdleTimeout(1);
+        final BPConnectionPool pool = createPool(2);
+        pool.release(borrow(pool, client), true);
+        Thread.sleep(10);
+        assertSame(other, borrow(pool, other).getClient());
+        assertEquals(1, pool.getEvicted());
+        mockControl.verify();
+    }
+
+    @Test
+    void testClientThatCannotBeReboundIsClosed() {
+        final BPClient plain = mockControl.createMock(BPClient.class);
+        plain.disconnectQuietly();
+        mockControl.replay();
+        final BPConnectionPool pool = createPool(2);
+        assertFalse(pool.release(borrow(pool, plain), true));
+        assertEquals(0, pool.getIdle());
+        mockControl.verify();
+    }
+
+    @Test
+    void testChangedConfigurationClosesConnections() {
+        expect(client.changeToInitialDirectory()).andReturn(true);
+        client.disconnectQuietly();
+        expect(other.changeToInitialDirectory()).andReturn(true);
+        other.disconnectQuietly();
+        mockControl.replay();
+        final BPConnectionPool pool = createPool(2);
+        final BPConnectionPool.Lease first = borrow(pool, client);
+        final BPConnectionPool.Lease second = borrow(pool, other);
+        assertTrue(pool.release(first, true));
+        final BPHostConfiguration changed = new BPHostConfigurationFactory().create("POOL-CONFIG");
+        changed.setHostname("another.host");
+        changed.setPoolSize(2);
+        assertSame(pool, BPConnectionPool.get(changed, null));
+        assertEquals(0, pool.getIdle());
+        assertFalse(pool.release(second, true));
+        mockControl.verify();
+    }
+
+    @Test
+    void testRemovedConfigurationClosesPool() {
+        expect(client.changeToInitialDirectory()).andReturn(true);
+        client.disconnectQuietly();
+        mockControl.replay();
+        final BPConnectionPool pool = createPool(2);
+        pool.release(borrow(pool, client), true);
+        BPConnectionPool.remove("POOL-CONFIG");
+        assertTrue(BPConnectionPool.getAll().isEmpty());
+        mockControl.verify();
+    }
+
+    @Test
+    void testConnectionReturnedToRemovedPoolIsClosed() {
+        expect(client.changeToInitialDirectory()).andReturn(true);
+        client.disconnectQuietly();
+        mockControl.replay();
+        final BPConnectionPool pool = createPool(2);
+        final BPConnectionPool.Lease lease = borrow(pool, client);
+        BPConnectionPool.remove("POOL-CONFIG");
+        assertFalse(pool.release(lease, true));
+        assertNotSame(pool, BPConnectionPool.get(hostConfig, null));
+        mockControl.verify();
+    }
+
+    private BPConnectionPool.Lease borrow(final BPConnectionPool pool, final BPClient client) {
+        return pool.borrow(factory(client), buildInfo, null);
+    }
+
+    private BPConnectionPool createPool(final int size) {
+        hostConfig.setPoolSize(size);
+        return BPConnectionPool.get(hostConfig, null);
+    }
+
+    private static BPClientFactory factory(final BPClient client) {
+        return new BPClientFactory() {
+            public BPClient createClient() {
+                return client;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+class BPConsoleBufferTest {
+
+    private static final String NL = System.lineSeparator();
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final PrintStream console = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+
+    @Test
+    void testLinesAreHeldUntilFlushed() {
+        final BPConsoleBuffer buffer = new BPConsoleBuffer(console, 60000);
+        buffer.println("one");
+        buffer.println("two");
+        assertEquals("", written());
+        buffer.flush();
+        assertEquals("one" + NL + "two" + NL, written());
+    }
+
+    @Test
+    void testFlushesWhenFull() {
+        final BPConsoleBuffer buffer = new BPConsoleBuffer(console, 60000);
+        final String line = "0123456789012345678901234567890123456789";
+        final int lines = BPConsoleBuffer.FLUSH_SIZE / (line.length() + NL.length()) + 1;
+        for (int i = 0; i < lines; i++)
+            buffer.println(line);
+        assertEquals(lines * (line.length() + NL.length()), written().length());
+    }
+
+    @Test
+    void testFlushesAfterInterval() throws Exception {
+        final BPConsoleBuffer buffer = new BPConsoleBuffer(console, 50);
+        buffer.println("waiting");
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (written().isEmpty() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(written().startsWith("waiting"));
+    }
+
+    @Test
+    void testLinesCanBeAddedWhileBatchIsWritten() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final PrintStream slowConsole = new PrintStream(new FilterOutputStream(bytes) {
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    throw new InterruptedIOException();
+                }
+                out.write(b, off, len);
+            }
+        }, false, StandardCharsets.UTF_8);
+        final BPConsoleBuffer buffer = new BPConsoleBuffer(slowConsole, 60000);
+        buffer.println("first");
+        final Thread flusher = new Thread(buffer::flush);
+        flusher.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        final Thread adder = new Thread(() -> buffer.println("second"));
+        adder.start();
+        adder.join(5000);
+        assertFalse(adder.isAlive());
+        release.countDown();
+        flusher.join(5000);
+        buffer.flush();
+        assertEquals("first" + NL + "second" + NL, written());
+    }
+
+    private String written() {
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+class BPHostMetricsTest {
+
+    private static final String CONFIG_NAME = "metrics host";
+
+    @AfterEach
+    void tearDown() {
+        BPHostMetrics.clear();
+    }
+
+    @Test
+    void testHistogramBuckets() {
+        final BPLatencyHistogram histogram = new BPLatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(7));
+        histogram.record(TimeUnit.MINUTES.toNanos(2));
+        final long[] expected = new long[BPLatencyHistogram.BUCKET_BOUNDS.length + 1];
+        expected[0] = 1;
+        expected[2] = 1;
+        expected[expected.length - 1] = 1;
+        assertArrayEquals(expected, histogram.getCounts());
+        assertEquals(3, histogram.getCount());
+        assertEquals(TimeUnit.MINUTES.toMillis(2), histogram.getMaxMillis());
+    }
+
+    @Test
+    void testPublishesAreAddedUp() {
+        BPHostMetrics.recordAll(Arrays.asList(createMetrics(true), createMetrics(false)));
+        final BPHostMetrics metrics = BPHostMetrics.get(CONFIG_NAME);
+        assertEquals(2, metrics.getPublishes());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(6, metrics.getFiles());
+        assertEquals(8000, metrics.getBytes());
+        assertEquals(2000, metrics.getBytesPerSecond());
+        assertEquals(4, metrics.getConnectLatency().getCount());
+        assertEquals(0, metrics.getDisconnectLatency().getCount());
+    }
+
+    @Test
+    void testExportedThroughJmx() throws Exception {
+        BPHostMetrics.recordAll(Arrays.asList(createMetrics(true)));
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(1L, server.getAttribute(BPHostMetrics.getObjectName(CONFIG_NAME), "Publishes"));
+        final CompositeData connect = (CompositeData) server.getAttribute(BPHostMetrics.getObjectName(CONFIG_NAME),
+                "ConnectLatency");
+        assertEquals(2L, connect.get("count"));
+        BPHostMetrics.clear();
+        assertFalse(server.isRegistered(BPHostMetrics.getObjectName(CONFIG_NAME)));
+    }
+
+    @Test
+    void testEachHostConfigurationIsSeparate() {
+        BPHostMetrics.recordAll(Arrays.asList(createMetrics(true), new BPPublisherMetrics("other host")));
+        assertEquals(2, BPHostMetrics.getAll().size());
+        assertEquals(0, BPHostMetrics.get("other host").getBytes());
+    }
+
+    private static BPPublisherMetrics createMetrics(final boolean success) {
+        final BPPublisherMetrics metrics = new BPPublisherMetrics(CONFIG_NAME);
+        metrics.record(BPPublisherMetrics.Operation.CONNECT, TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.record(BPPublisherMetrics.Operation.CONNECT, TimeUnit.MILLISECONDS.toNanos(200));
+        metrics.addTransfer(new BPTransferMetrics("**/*", "", 3, 1, 4000, 5, 2000));
+        metrics.setSuccess(success);
+        return metrics;
+    }
+
+}
@@ -39,12 +39,16 @@ import org.mockito.Mockito;
 
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.easymock.EasyMock.expect;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SuppressWarnings({"PMD.SignatureDeclareThrowsException", "PMD.TooManyMethods", "PMD.AvoidDuplicateLiterals", "PMD.LooseCoupling",
     "PMD.MoreThanOneLogger"}) class BPInstanceConfigTest {
@@ -105,6 +109,21 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
         assertResult(Result.UNSTABLE, instanceConfig);
     }
 
+    @Test
+    void testFailureWithoutMetricsIsRecordedAsFailedPublish() throws Exception {
+        final BapPublisher mockPub1 = createAndAddMockPublisher(hostConfiguration.getName());
+        mockPub1.perform(hostConfiguration, buildInfo);
+        EasyMock.expectLastCall().andThrow(new RuntimeException("Bad stuff here!"));
+
+        final BPInstanceConfig instanceConfig = createInstanceConfig(publishers, false, false, false);
+        instanceConfig.setHostConfigurationAccess(mockHostConfigurationAccess);
+
+        assertResult(Result.UNSTABLE, instanceConfig);
+        assertEquals(1, buildInfo.getPublisherMetrics().size());
+        assertEquals(hostConfiguration.getName(), buildInfo.getPublisherMetrics().get(0).getConfigName());
+        assertFalse(buildInfo.getPublisherMetrics().get(0).isSuccess());
+    }
+
     @Test
     void testPerformReturnsUnstableAndInvokesOtherPublishersWhenContinueOnErrorSet() throws Exception {
         final BapPublisher mockPub1 = createAndAddMockPublisher(hostConfiguration.getName());
@@ -148,6 +167,112 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
         assertResult(Result.FAILURE, instanceConfig);
     }
 
+    @Test
+    void testParallelPublishersEachGetTheirOwnBuildInfo() throws Exception {
+        final IMocksControl control = EasyMock.createControl();
+        final BapPublisher mockPub1 = control.createMock(BapPublisher.class);
+        final BapPublisher mockPub2 = control.createMock(BapPublisher.class);
+        for (BapPublisher publisher : new BapPublisher[] {mockPub1, mockPub2}) {
+            expect(publisher.getConfigName()).andReturn(hostConfiguration.getName()).anyTimes();
+            publisher.setEffectiveEnvironmentInBuildInfo(EasyMock.anyObject());
+            publishers.add(publisher);
+        }
+        mockPub1.perform(EasyMock.eq(hostConfiguration), EasyMock.not(EasyMock.same(buildInfo)));
+        EasyMock.expectLastCall().andThrow(new RuntimeException("Bad stuff here!"));
+        mockPub2.perform(EasyMock.eq(hostConfiguration), EasyMock.not(EasyMock.same(buildInfo)));
+
+        final BPInstanceConfig instanceConfig = createInstanceConfig(publishers, true, false, false);
+        instanceConfig.setHostConfigurationAccess(mockHostConfigurationAccess);
+        instanceConfig.setParallelism(2);
+
+        control.replay();
+        assertEquals(Result.UNSTABLE, instanceConfig.perform(buildInfo));
+        control.verify();
+    }
+
+    @Test
+    void testParallelFailureLetsRunningPublishersFinish() throws Exception {
+        final IMocksControl control = EasyMock.createControl();
+        final BapPublisher mockPub1 = control.createMock(BapPublisher.class);
+        final BapPublisher mockPub2 = control.createMock(BapPublisher.class);
+        for (BapPublisher publisher : new BapPublisher[] {mockPub1, mockPub2}) {
+            expect(publisher.getConfigName()).andReturn(hostConfiguration.getName()).anyTimes();
+            publisher.setEffectiveEnvironmentInBuildInfo(EasyMock.anyObject());
+            publishers.add(publisher);
+        }
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean finished = new AtomicBoolean();
+        mockPub1.perform(EasyMock.eq(hostConfiguration), EasyMock.anyObject());
+        EasyMock.expectLastCall().andAnswer(() -> {
+            started.await();
+            throw new RuntimeException("Bad stuff here!");
+        });
+        mockPub2.perform(EasyMock.eq(hostConfiguration), EasyMock.anyObject());
+        EasyMock.expectLastCall().andAnswer(() -> {
+            started.countDown();
+            Thread.sleep(200);
+            finished.set(true);
+            return null;
+        });
+
+        final BPInstanceConfig instanceConfig = createInstanceConfig(publishers, false, false, false);
+        instanceConfig.setHostConfigurationAccess(mockHostConfigurationAccess);
+        instanceConfig.setParallelism(2);
+
+        control.replay();
+        assertEquals(Result.UNSTABLE, instanceConfig.perform(buildInfo));
+        assertTrue(finished.get());
+        control.verify();
+    }
+
+    @Test
+    void testOneSessionStopsAtFirstFailure() throws Exception {
+        final BapPublisher mockPub1 = createAndAddMockPublisher(hostConfiguration.getName());
+        final BapPublisher mockPub2 = createAndAddMockPublisher(hostConfiguration.getName());
+        mockPub1.setEffectiveEnvironmentInBuildInfo(buildInfo);
+        mockPub1.perform(hostConfiguration, buildInfo);
+        EasyMock.expectLastCall().andThrow(new RuntimeException("Bad stuff here!"));
+
+        final BPInstanceConfig instanceConfig = createInstanceConfig(publishers, false, false, false);
+        instanceConfig.setHostConfigurationAccess(mockHostConfigurationAccess);
+        instanceConfig.setPublishInOneSession(true);
+
+        assertResult(Result.UNSTABLE, instanceConfig);
+    }
+
+    @Test
+    void testOneSessionReleasesHostSessionWhenItsPublisherFinishes() throws Exception {
+        final BPHostConfiguration first = new BPHostConfigurationFactory().create("FIRST-CONFIG");
+        final BPHostConfiguration second = new BPHostConfigurationFactory().create("SECOND-CONFIG");
+        first.setMaxConcurrentSessions(1);
+        second.setMaxConcurrentSessions(1);
+        Mockito.when(mockHostConfigurationAccess.getConfiguration(first.getName())).thenReturn(first);
+        Mockito.when(mockHostConfigurationAccess.getConfiguration(second.getName())).thenReturn(second);
+        final BapPublisher mockPub1 = createAndAddMockPublisher(first.getName());
+        final BapPublisher mockPub2 = createAndAddMockPublisher(second.getName());
+        mockPub1.setEffectiveEnvironmentInBuildInfo(buildInfo);
+        mockPub1.perform(first, buildInfo);
+        mockPub2.setEffectiveEnvironmentInBuildInfo(buildInfo);
+        mockPub2.perform(second, buildInfo);
+        final AtomicInteger activeOnFirst = new AtomicInteger(-1);
+        EasyMock.expectLastCall().andAnswer(() -> {
+            activeOnFirst.set(BPSessionLimiter.get(first).getActive());
+            return null;
+        });
+
+        final BPInstanceConfig instanceConfig = createInstanceConfig(publishers, false, false, false);
+        instanceConfig.setHostConfigurationAccess(mockHostConfigurationAccess);
+        instanceConfig.setPublishInOneSession(true);
+
+        try {
+            assertResult(Result.SUCCESS, instanceConfig);
+            assertEquals(0, activeOnFirst.get());
+            assertEquals(0, BPSessionLimiter.get(second).getActive());
+        } finally {
+            BPSessionLimiter.clear();
+        }
+    }
+
     private BapPublisher createAndAddMockPublisher(final String hostConfigurationName) {
         final BapPublisher mockPublisher = mockControl.createMock(BapPublisher.class);
         if (hostConfigurationName != null) {
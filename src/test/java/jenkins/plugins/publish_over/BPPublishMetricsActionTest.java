@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.model.Run;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.stapler.export.Flavor;
+import org.kohsuke.stapler.export.ModelBuilder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+class BPPublishMetricsActionTest {
+
+    private final Run<?, ?> run = Mockito.mock(Run.class);
+
+    @Test
+    void testFirstPublishStepAddsActionAndSavesBuild() throws Exception {
+        BPPublishMetricsAction.addTo(run, List.of(createMetrics("first")));
+        final ArgumentCaptor<BPPublishMetricsAction> added = ArgumentCaptor.forClass(BPPublishMetricsAction.class);
+        Mockito.verify(run).addAction(added.capture());
+        assertEquals(1, added.getValue().getPublishers().size());
+        Mockito.verify(run).save();
+    }
+
+    @Test
+    void testLaterPublishStepAddsToActionAndSavesBuild() throws Exception {
+        final BPPublishMetricsAction action = new BPPublishMetricsAction(List.of(createMetrics("first")));
+        Mockito.when(run.getAction(BPPublishMetricsAction.class)).thenReturn(action);
+        BPPublishMetricsAction.addTo(run, List.of(createMetrics("second")));
+        assertEquals("second", action.getPublishers().get(1).getConfigName());
+        Mockito.verify(run, Mockito.never()).addAction(Mockito.any());
+        Mockito.verify(run).save();
+    }
+
+    @Test
+    void testMetricsAreExportedAsJson() throws Exception {
+        final BPPublishMetricsAction action = new BPPublishMetricsAction(List.of(createMetrics("exported")));
+        final StringWriter json = new StringWriter();
+        new ModelBuilder().get(BPPublishMetricsAction.class).writeTo(action, Flavor.JSON.createDataWriter(action, json));
+        final String exported = json.toString();
+        assertTrue(exported.contains("\"configName\":\"exported\""), exported);
+        assertTrue(exported.contains("\"sourceFiles\":\"**/*\""), exported);
+        assertTrue(exported.contains("\"bytes\":4000"), exported);
+        assertTrue(exported.contains("\"files\":3"), exported);
+    }
+
+    private static BPPublisherMetrics createMetrics(final String configName) {
+        final BPPublisherMetrics metrics = new BPPublisherMetrics(configName);
+        metrics.addTransfer(new BPTransferMetrics("**/*", "", 3, 1, 4000, 5, 2000));
+        metrics.setSuccess(true);
+        return metrics;
+    }
+
+}
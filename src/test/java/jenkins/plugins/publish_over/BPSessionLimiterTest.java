@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import jenkins.plugins.publish_over.helper.BPBuildInfoFactory;
+import jenkins.plugins.publish_over.helper.BPHostConfigurationFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BPSessionLimiterTest {
+
+    private final BPBuildInfo buildInfo = new BPBuildInfoFactory().createEmpty();
+    private final BPHostConfiguration hostConfig = new BPHostConfigurationFactory().create("LIMITED-CONFIG");
+
+    @AfterEach
+    void tearDown() {
+        BPSessionLimiter.clear();
+    }
+
+    @Test
+    void testDisabledByDefault() {
+        assertNull(BPSessionLimiter.get(hostConfig));
+    }
+
+    @Test
+    void testSharedUntilLimitChanges() {
+        hostConfig.setMaxConcurrentSessions(2);
+        final BPSessionLimiter limiter = BPSessionLimiter.get(hostConfig);
+        assertSame(limiter, BPSessionLimiter.get(hostConfig));
+        hostConfig.setMaxConcurrentSessions(3);
+        assertNotSame(limiter, BPSessionLimiter.get(hostConfig));
+        assertEquals(3, BPSessionLimiter.get(hostConfig).getLimit());
+    }
+
+    @Test
+    void testPublishOverLimitWaitsForRelease() throws Exception {
+        hostConfig.setMaxConcurrentSessions(1);
+        final BPSessionLimiter limiter = BPSessionLimiter.get(hostConfig);
+        limiter.acquire(buildInfo);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread waiting = new Thread(() -> {
+            limiter.acquire(buildInfo);
+            acquired.countDown();
+        });
+        waiting.start();
+        while (limiter.getQueued() == 0) Thread.sleep(1);
+        assertEquals(1, acquired.getCount());
+        assertEquals(1, limiter.getActive());
+        limiter.release();
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        waiting.join();
+        assertEquals(1, limiter.getActive());
+        limiter.release();
+        assertEquals(0, limiter.getActive());
+    }
+
+    @Test
+    void testPermitsForOtherConnectionsCountAgainstTheLimit() {
+        hostConfig.setMaxConcurrentSessions(2);
+        final BPSessionLimiter limiter = BPSessionLimiter.get(hostConfig);
+        limiter.acquire(buildInfo);
+        final BPSessionPermits permits = BPSessionLimiter.createPermits();
+        assertTrue(permits.tryAcquire("LIMITED-CONFIG"));
+        assertEquals(2, limiter.getActive());
+        assertFalse(permits.tryAcquire("LIMITED-CONFIG"));
+        permits.release("LIMITED-CONFIG");
+        assertEquals(1, limiter.getActive());
+        assertTrue(permits.tryAcquire("UNLIMITED-CONFIG"));
+    }
+
+    @Test
+    void testPermitIsNotTakenAheadOfQueuedPublish() throws Exception {
+        hostConfig.setMaxConcurrentSessions(1);
+        final BPSessionLimiter limiter = BPSessionLimiter.get(hostConfig);
+        limiter.acquire(buildInfo);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread waiting = new Thread(() -> {
+            limiter.acquire(buildInfo);
+            try {
+                done.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            limiter.release();
+        });
+        waiting.start();
+        while (limiter.getQueued() == 0) Thread.sleep(1);
+        limiter.release();
+        assertFalse(BPSessionLimiter.createPermits().tryAcquire("LIMITED-CONFIG"));
+        done.countDown();
+        waiting.join();
+    }
+
+}
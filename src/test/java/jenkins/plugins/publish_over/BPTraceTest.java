@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BPTraceTest {
+
+    @Test
+    void testOneLineForEachOperation() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BPTrace trace = new BPTrace(out);
+        trace.record(BPTrace.CONNECT, "host", null, 0, 1500000, true);
+        trace.record(BPTrace.TRANSFER_FILE, "host", "dir/a.txt", 42, 2000000, false);
+        trace.flush();
+        final String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"phase\":\"connect\",\"config\":\"host\",\"path\":null,\"bytes\":0,\"durationMicros\":1500,"
+                + "\"outcome\":\"success\""), lines[0]);
+        assertTrue(lines[1].contains("\"path\":\"dir/a.txt\",\"bytes\":42,\"durationMicros\":2000,\"outcome\":\"failure\""),
+                lines[1]);
+    }
+
+    @Test
+    void testNothingIsRecordedAfterClose() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BPTrace trace = new BPTrace(out);
+        trace.record(BPTrace.CONNECT, "host", null, 0, 1000, true);
+        trace.close();
+        trace.record(BPTrace.DISCONNECT, "host", null, 0, 1000, true);
+        trace.flush();
+        final String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains("\"phase\":\"connect\""), lines[0]);
+    }
+
+    @Test
+    void testQuote() {
+        assertEquals("\"a\\\"b\\\\c\\u000a\"", BPTrace.quote("a\"b\\c\n"));
+        assertEquals("null", BPTrace.quote(null));
+    }
+
+    @Test
+    void testRecordsThatDoNotFitAreDroppedAndCounted() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            public synchronized void write(final byte[] bytes, final int offset, final int length) {
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    throw new IllegalStateException(ie);
+                }
+                super.write(bytes, offset, length);
+            }
+        };
+        final BPTrace trace = new BPTrace(out);
+        final int records = BPTrace.CAPACITY * 2;
+        for (int i = 0; i < records; i++)
+            trace.record(BPTrace.CHANGE_DIRECTORY, "host", "dir", 0, 1000, true);
+        release.countDown();
+        trace.close();
+        final String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        final String last = lines[lines.length - 1];
+        final long dropped = Long.parseLong(last.substring(last.indexOf("\"dropped\":") + 10, last.length() - 1));
+        assertTrue(dropped > 0);
+        assertEquals(records, lines.length - 1 + dropped);
+    }
+
+}
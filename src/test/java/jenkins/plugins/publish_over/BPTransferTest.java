@@ -37,12 +37,15 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Locale;
 import java.util.TreeMap;
 
+import static jenkins.plugins.publish_over.helper.InputStreamMatcher.gzipStreamContains;
 import static jenkins.plugins.publish_over.helper.InputStreamMatcher.streamContains;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
@@ -224,6 +227,29 @@ class BPTransferTest {
         assertCreateMultipleDirectoriesFromRemoteDirectory("newDir\\and\\another\\", new String[] {"newDir", "and", "another"});
     }
 
+    @Test
+    void testMetricsAreRecorded() throws Exception {
+        final RandomFile toTransfer = new RandomFile(baseDir, "sub/hello.txt");
+        final BPTransfer transfer = new BPTransfer("**/*", "newDir", "", false, false);
+        final BPPublisherMetrics metrics = new BPPublisherMetrics("config");
+        buildInfo.setMetrics(metrics);
+        expect(mockClient.changeToInitialDirectory()).andReturn(true);
+        expect(mockClient.changeDirectory("newDir")).andReturn(false);
+        expect(mockClient.makeDirectory("newDir")).andReturn(true);
+        expect(mockClient.changeDirectory("newDir")).andReturn(true);
+        expect(mockClient.changeDirectory("sub")).andReturn(false);
+        expect(mockClient.makeDirectory("sub")).andReturn(true);
+        expect(mockClient.changeDirectory("sub")).andReturn(true);
+        expectTransferFile(transfer, toTransfer);
+        assertTransfer(transfer, 1);
+        assertEquals(1, metrics.getTransfers().size());
+        final BPTransferMetrics transferMetrics = metrics.getTransfers().get(0);
+        assertEquals(1, transferMetrics.getFiles());
+        assertEquals(2, transferMetrics.getDirectories());
+        assertEquals(toTransfer.getContents().length, transferMetrics.getBytes());
+        assertEquals("newDir", transferMetrics.getRemoteDirectory());
+    }
+
     private void assertCreateMultipleDirectoriesFromRemoteDirectory(final String remoteDir, final String[] expectedDirs) throws Exception {
         final String normalizedDir = remoteDir.contains("\\") ? remoteDir.replaceAll("\\\\", "/") : remoteDir;
         final RandomFile toTransfer = new RandomFile(baseDir, "hello.txt");
@@ -596,6 +622,53 @@ class BPTransferTest {
         mockControl.verify();
     }
 
+    @Test
+    void testCompressibleFileIsSentGzipped() throws Exception {
+        final File toTransfer = new File(baseDir, "build.log");
+        final byte[] contents = StringUtils.repeat("[INFO] Building module\n", 1000).getBytes(StandardCharsets.UTF_8);
+        Files.write(toTransfer.toPath(), contents);
+        final BPTransfer transfer = new BPTransfer("*", "", "", false, false);
+        transfer.setCompression(BPCompression.GZIP);
+        final BPRemoteNameClient namingClient = mockControl.createMock(BPRemoteNameClient.class);
+        expect(namingClient.changeToInitialDirectory()).andReturn(true);
+        namingClient.transferFile(same(transfer), eq(new FilePath(toTransfer)), eq("build.log.gz"), gzipStreamContains(contents));
+        mockControl.replay();
+        assertEquals(1, transfer.transfer(buildInfo, namingClient));
+        mockControl.verify();
+    }
+
+    @Test
+    void testSentUncompressedWhenClientCannotRename() throws Exception {
+        final File toTransfer = new File(baseDir, "build.log");
+        final byte[] contents = StringUtils.repeat("[INFO] Building module\n", 1000).getBytes(StandardCharsets.UTF_8);
+        Files.write(toTransfer.toPath(), contents);
+        final BPTransfer transfer = new BPTransfer("*", "", "", false, false);
+        transfer.setCompression(BPCompression.GZIP);
+        expect(mockClient.changeToInitialDirectory()).andReturn(true);
+        mockClient.transferFile(same(transfer), eq(new FilePath(toTransfer)), streamContains(contents));
+        assertTransfer(transfer, 1);
+    }
+
+    @Test
+    void testCompressedExtensionIsSentAsIs() throws Exception {
+        final RandomFile toTransfer = new RandomFile(baseDir, "library.jar");
+        final BPTransfer transfer = new BPTransfer("*", "", "", false, false);
+        transfer.setCompression(BPCompression.GZIP);
+        expect(mockClient.changeToInitialDirectory()).andReturn(true);
+        expectTransferFile(transfer, toTransfer);
+        assertTransfer(transfer, 1);
+    }
+
+    @Test
+    void testIncompressibleSampleIsSentAsIs() throws Exception {
+        final RandomFile toTransfer = new RandomFile(new File(baseDir, "random.bin"), BPCompression.SAMPLE_SIZE * 2);
+        final BPTransfer transfer = new BPTransfer("*", "", "", false, false);
+        transfer.setCompression(BPCompression.DEFLATE);
+        expect(mockClient.changeToInitialDirectory()).andReturn(true);
+        expectTransferFile(transfer, toTransfer);
+        assertTransfer(transfer, 1);
+    }
+
     private Calendar createCalendar(final String dateString) throws ParseException {
         final Calendar calendar = Calendar.getInstance();
         calendar.setTime(new SimpleDateFormat("dd/MM/yyyy HH:mm:ss", Locale.getDefault()).parse(dateString));
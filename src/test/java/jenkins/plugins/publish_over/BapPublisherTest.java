@@ -37,6 +37,8 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +48,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -276,6 +279,237 @@ class BapPublisherTest {
         mockControl.verify();
     }
 
+    @Test
+    void testPermanentExceptionIsNotRetried() throws Exception {
+        final BPTransfer transfer = mockControl.createMock(BPTransfer.class);
+        transfers.add(transfer);
+        mockClient.beginTransfers(transfer);
+        expect(transfer.hasConfiguredSourceFiles()).andReturn(true);
+        final BPTransfer.TransferState state = BPTransfer.TransferState.create(new FileFinderResult(new FilePath[0], new FilePath[0]));
+        final BapPermanentException expected = new BapPermanentException("Bad date format");
+        expect(transfer.transfer(buildInfo, mockClient)).andThrow(new BapTransferException(expected, state));
+        mockClient.disconnectQuietly();
+        final Retry retry = new Retry(3, 100);
+        final BapPublisher publisher = createPublisher(hostConfiguration.getName(), false, transfers, false, false, retry);
+
+        mockControl.replay();
+        assertSame(expected, assertThrows(BapPermanentException.class, () -> publisher.perform(hostConfiguration, buildInfo)));
+        mockControl.verify();
+    }
+
+    @Test
+    void testRejectedCredentialsAreNotRetried() throws Exception {
+        final int[] attempts = {0};
+        final BPHostConfiguration rejecting = new BPHostConfigurationFactory.ConcreteBPHostConfiguration<BPClient>(mockClient) {
+            @Override
+            public BPClient createClient(final BPBuildInfo buildInfo) {
+                attempts[0]++;
+                throw new BapAuthenticationException("Login incorrect");
+            }
+        };
+        rejecting.setName("REJECTING-CONFIG");
+        transfers.add(new BPTransfer("*", "", "", false, false));
+        final BapPublisher publisher = createPublisher(rejecting.getName(), false, transfers, false, false, new Retry(3, 100));
+
+        final BapConnectException thrown = assertThrows(BapConnectException.class, () -> publisher.perform(rejecting, buildInfo));
+        assertTrue(thrown.getCause() instanceof BapAuthenticationException);
+        assertEquals(1, attempts[0]);
+    }
+
+    @Test
+    void testFileRetriedOnSameConnectionWhenStillConnected() throws Exception {
+        final BPTransfer transfer = mockControl.createMock(BPTransfer.class);
+        transfers.add(transfer);
+        mockClient.beginTransfers(transfer);
+        expect(transfer.hasConfiguredSourceFiles()).andReturn(true);
+        final BPTransfer.TransferState state = BPTransfer.TransferState.create(new FileFinderResult(new FilePath[0], new FilePath[0]));
+        expect(transfer.transfer(buildInfo, mockClient)).andThrow(new BapTransferException(new IOException(), state));
+        expect(mockClient.isConnected()).andReturn(true);
+        expect(transfer.transfer(buildInfo, mockClient, state)).andReturn(1);
+        mockClient.endTransfers(transfer);
+        mockClient.disconnectQuietly();
+        final Retry retry = new Retry(0, 100);
+        retry.setFileRetries(1);
+        final BapPublisher publisher = createPublisher(hostConfiguration.getName(), false, transfers, false, false, retry);
+
+        mockControl.replay();
+        publisher.perform(hostConfiguration, buildInfo);
+        mockControl.verify();
+    }
+
+    @Test
+    void testReconnectWhenSessionBroken() throws Exception {
+        final BPTransfer transfer = mockControl.createMock(BPTransfer.class);
+        transfers.add(transfer);
+        mockClient.beginTransfers(transfer);
+        expect(transfer.hasConfiguredSourceFiles()).andReturn(true);
+        final BPTransfer.TransferState state = BPTransfer.TransferState.create(new FileFinderResult(new FilePath[0], new FilePath[0]));
+        expect(transfer.transfer(buildInfo, mockClient)).andThrow(new BapTransferException(new IOException(), state));
+        expect(mockClient.isConnected()).andReturn(false);
+        mockClient.disconnectQuietly();
+        mockClient.beginTransfers(transfer);
+        expect(transfer.hasConfiguredSourceFiles()).andReturn(true);
+        expect(transfer.transfer(buildInfo, mockClient, state)).andReturn(1);
+        mockClient.endTransfers(transfer);
+        mockClient.disconnectQuietly();
+        final Retry retry = new Retry(1, 100);
+        retry.setFileRetries(1);
+        final BapPublisher publisher = createPublisher(hostConfiguration.getName(), false, transfers, false, false, retry);
+
+        mockControl.replay();
+        publisher.perform(hostConfiguration, buildInfo);
+        mockControl.verify();
+    }
+
+    @Test
+    void testConnectionReusedBetweenPublishersInBuild() throws Exception {
+        buildInfo.setConnectionCacheId("build-1");
+        final BPReusableClient client = mockControl.createMock(BPReusableClient.class);
+        final BPHostConfiguration hostConfig = new BPHostConfigurationFactory().create("TEST-CONFIG", client);
+        final BPTransfer transfer1 = mockControl.createMock(BPTransfer.class);
+        final BPTransfer transfer2 = mockControl.createMock(BPTransfer.class);
+        final BapPublisher publisher1 = createPublisher(hostConfig.getName(), false, new ArrayList<>(Arrays.asList(transfer1)));
+        final BapPublisher publisher2 = createPublisher(hostConfig.getName(), false, new ArrayList<>(Arrays.asList(transfer2)));
+        client.beginTransfers(transfer1);
+        expect(transfer1.hasConfiguredSourceFiles()).andReturn(true);
+        expect(transfer1.transfer(buildInfo, client)).andReturn(1);
+        client.endTransfers(transfer1);
+        expect(client.changeToInitialDirectory()).andReturn(true);
+        expect(client.isConnected()).andReturn(true);
+        client.bind(buildInfo, publisher2);
+        client.beginTransfers(transfer2);
+        expect(transfer2.hasConfiguredSourceFiles()).andReturn(true);
+        expect(transfer2.transfer(buildInfo, client)).andReturn(1);
+        client.endTransfers(transfer2);
+        expect(client.changeToInitialDirectory()).andReturn(true);
+        client.disconnectQuietly();
+
+        mockControl.replay();
+        publisher1.perform(hostConfig, buildInfo);
+        publisher2.perform(hostConfig, buildInfo);
+        BPConnectionCache.close("build-1");
+        mockControl.verify();
+    }
+
+    @Test
+    void testClientThatCannotBeReboundIsNotKeptForTheNextPublisher() throws Exception {
+        buildInfo.setConnectionCacheId("build-2");
+        final BPTransfer transfer1 = mockControl.createMock(BPTransfer.class);
+        final BPTransfer transfer2 = mockControl.createMock(BPTransfer.class);
+        mockClient.beginTransfers(transfer1);
+        expect(transfer1.hasConfiguredSourceFiles()).andReturn(true);
+        expect(transfer1.transfer(buildInfo, mockClient)).andReturn(1);
+        mockClient.endTransfers(transfer1);
+        mockClient.disconnectQuietly();
+        mockClient.beginTransfers(transfer2);
+        expect(transfer2.hasConfiguredSourceFiles()).andReturn(true);
+        expect(transfer2.transfer(buildInfo, mockClient)).andReturn(1);
+        mockClient.endTransfers(transfer2);
+        mockClient.disconnectQuietly();
+        final BapPublisher publisher1 = createPublisher(hostConfiguration.getName(), false, new ArrayList<>(Arrays.asList(transfer1)));
+        final BapPublisher publisher2 = createPublisher(hostConfiguration.getName(), false, new ArrayList<>(Arrays.asList(transfer2)));
+
+        mockControl.replay();
+        publisher1.perform(hostConfiguration, buildInfo);
+        publisher2.perform(hostConfiguration, buildInfo);
+        BPConnectionCache.close("build-2");
+        mockControl.verify();
+    }
+
+    @Test
+    void testParallelTransfersEachUseTheirOwnConnection() throws Exception {
+        final IMocksControl control = EasyMock.createControl();
+        final BPClient client = control.createMock(BPClient.class);
+        final BPHostConfiguration hostConfig = new BPHostConfigurationFactory().create("TEST-CONFIG", client);
+        for (int files = 1; files <= 2; files++) {
+            final BPTransfer transfer = control.createMock(BPTransfer.class);
+            expectRemoteDirectory(transfer, "dir" + files, false);
+            client.beginTransfers(transfer);
+            expect(transfer.hasConfiguredSourceFiles()).andReturn(true);
+            expect(transfer.transfer(EasyMock.not(EasyMock.same(buildInfo)), EasyMock.same(client))).andReturn(files);
+            client.endTransfers(transfer);
+            transfers.add(transfer);
+        }
+        client.disconnectQuietly();
+        expectLastCall().times(2);
+        final BapPublisher publisher = createPublisher(hostConfig.getName(), false, transfers);
+        publisher.setParallelTransfers(2);
+
+        control.replay();
+        publisher.perform(hostConfig, buildInfo);
+        control.verify();
+    }
+
+    @Test
+    void testFailedParallelTransferLeavesRunningTransfersToFinish() throws Exception {
+        final IMocksControl control = EasyMock.createControl();
+        final BPClient client = control.createMock(BPClient.class);
+        final BPHostConfiguration hostConfig = new BPHostConfigurationFactory().create("TEST-CONFIG", client);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean finished = new AtomicBoolean();
+        final BapPermanentException expected = new BapPermanentException("failed");
+        final BPTransfer failing = control.createMock(BPTransfer.class);
+        expectRemoteDirectory(failing, "dir1", false);
+        client.beginTransfers(failing);
+        expect(failing.hasConfiguredSourceFiles()).andReturn(true);
+        expect(failing.transfer(EasyMock.not(EasyMock.same(buildInfo)), EasyMock.same(client))).andAnswer(() -> {
+            started.await();
+            throw expected;
+        });
+        transfers.add(failing);
+        final BPTransfer running = control.createMock(BPTransfer.class);
+        expectRemoteDirectory(running, "dir2", false);
+        client.beginTransfers(running);
+        expect(running.hasConfiguredSourceFiles()).andReturn(true);
+        expect(running.transfer(EasyMock.not(EasyMock.same(buildInfo)), EasyMock.same(client))).andAnswer(() -> {
+            started.countDown();
+            Thread.sleep(200);
+            finished.set(true);
+            return 1;
+        });
+        client.endTransfers(running);
+        transfers.add(running);
+        client.disconnectQuietly();
+        expectLastCall().times(2);
+        final BapPublisher publisher = createPublisher(hostConfig.getName(), false, transfers);
+        publisher.setParallelTransfers(2);
+
+        control.replay();
+        assertSame(expected, assertThrows(BapPermanentException.class, () -> publisher.perform(hostConfig, buildInfo)));
+        assertTrue(finished.get());
+        control.verify();
+    }
+
+    @Test
+    void testOverlappingTransfersShareOneConnection() throws Exception {
+        final IMocksControl control = EasyMock.createControl();
+        final BPClient client = control.createMock(BPClient.class);
+        final BPHostConfiguration hostConfig = new BPHostConfigurationFactory().create("TEST-CONFIG", client);
+        final String[] remoteDirectories = {"site", "/site/images/", "other"};
+        for (int i = 0; i < remoteDirectories.length; i++) {
+            final BPTransfer transfer = control.createMock(BPTransfer.class);
+            expectRemoteDirectory(transfer, remoteDirectories[i], i == 2);
+            client.beginTransfers(transfer);
+            expect(transfer.hasConfiguredSourceFiles()).andReturn(true);
+            expect(transfer.transfer(EasyMock.same(buildInfo), EasyMock.same(client))).andReturn(i + 1);
+            client.endTransfers(transfer);
+            transfers.add(transfer);
+        }
+        client.disconnectQuietly();
+        final BapPublisher publisher = createPublisher(hostConfig.getName(), false, transfers);
+        publisher.setParallelTransfers(2);
+
+        control.replay();
+        publisher.perform(hostConfig, buildInfo);
+        control.verify();
+    }
+
+    private static void expectRemoteDirectory(final BPTransfer transfer, final String remoteDirectory, final boolean cleanRemote) {
+        expect(transfer.getRemoteDirectory()).andReturn(remoteDirectory).anyTimes();
+        expect(transfer.isRemoteDirectorySDF()).andReturn(false).anyTimes();
+        expect(transfer.isCleanRemote()).andReturn(cleanRemote).anyTimes();
+    }
+
     private static BapPublisher createPublisher(final String configName, final boolean verbose, final ArrayList<BPTransfer> transfers) {
         return createPublisher(configName, verbose, transfers, false, false);
     }
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+class CompressingInputStreamTest {
+
+    private final byte[] text = "The quick brown fox jumps over the lazy dog\n".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testGzipRoundTrip() throws Exception {
+        final CompressingInputStream compressed = BPCompression.GZIP.compress(new ByteArrayInputStream(text));
+        final byte[] gzipped = IOUtils.toByteArray(compressed);
+        compressed.close();
+        assertArrayEquals(text, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped))));
+        assertEquals(text.length, compressed.getBytesIn());
+        assertEquals(gzipped.length, compressed.getBytesOut());
+    }
+
+    @Test
+    void testDeflateRoundTrip() throws Exception {
+        final CompressingInputStream compressed = BPCompression.DEFLATE.compress(new ByteArrayInputStream(text));
+        final byte[] deflated = IOUtils.toByteArray(compressed);
+        compressed.close();
+        assertArrayEquals(text, IOUtils.toByteArray(new InflaterInputStream(new ByteArrayInputStream(deflated))));
+        assertEquals(deflated.length, compressed.getBytesOut());
+    }
+
+    @Test
+    void testSingleByteReads() throws Exception {
+        final CompressingInputStream compressed = BPCompression.GZIP.compress(new ByteArrayInputStream(text));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int read = compressed.read(); read != -1; read = compressed.read())
+            out.write(read);
+        compressed.close();
+        assertArrayEquals(text, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))));
+    }
+
+    @Test
+    void testSampleDetection() {
+        assertTrue(BPCompression.isCompressible(text, text.length));
+        final byte[] random = new byte[BPCompression.SAMPLE_SIZE];
+        new Random().nextBytes(random);
+        assertFalse(BPCompression.isCompressible(random, random.length));
+        final byte[] gzipMagic = {0x1f, (byte) 0x8b, 0, 0};
+        assertFalse(BPCompression.isCompressible(gzipMagic, gzipMagic.length));
+        assertTrue(BPCompression.hasCompressedExtension("dist/app.JAR"));
+        assertFalse(BPCompression.hasCompressedExtension("dist/readme.txt"));
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+class DeltaTransferTest {
+
+    private static final int BLOCK = BlockSignature.DEFAULT_BLOCK_SIZE;
+
+    @TempDir
+    private File baseDir;
+    private final InMemoryClient client = new InMemoryClient();
+    private int versions;
+    private final BPTransfer transfer = new BPTransfer("*", "", "", false, false);
+
+    @Test
+    void testFirstUploadSendsWholeFileAndSignature() throws Exception {
+        final byte[] contents = randomBytes(BLOCK * 2 + 100);
+        final FilePath file = write(contents);
+        final DeltaTransfer delta = new DeltaTransfer(transfer, client, file);
+        delta.transfer();
+        assertEquals(3, delta.getBlocksSent());
+        assertEquals(contents.length, delta.getBytesSent());
+        assertArrayEquals(contents, client.files.get("image.bin"));
+        assertEquals(3, BlockSignature.read(new ByteArrayInputStream(client.files.get("image.bin.bpsig"))).getBlockCount());
+    }
+
+    @Test
+    void testOnlyChangedBlocksAreSent() throws Exception {
+        final byte[] contents = randomBytes(BLOCK * 3);
+        new DeltaTransfer(transfer, client, write(contents)).transfer();
+        contents[BLOCK + 10]++;
+        final DeltaTransfer delta = new DeltaTransfer(transfer, client, write(contents));
+        delta.transfer();
+        assertEquals(1, delta.getBlocksSent());
+        assertEquals(BLOCK, delta.getBytesSent());
+        assertEquals(3, delta.getBlockCount());
+        assertArrayEquals(contents, client.files.get("image.bin"));
+    }
+
+    @Test
+    void testShrunkFileIsTruncated() throws Exception {
+        final byte[] contents = randomBytes(BLOCK * 3);
+        new DeltaTransfer(transfer, client, write(contents)).transfer();
+        final byte[] shorter = Arrays.copyOf(contents, BLOCK + 5);
+        final DeltaTransfer delta = new DeltaTransfer(transfer, client, write(shorter));
+        delta.transfer();
+        assertEquals(1, delta.getBlocksSent());
+        assertEquals(5, delta.getBytesSent());
+        assertArrayEquals(shorter, client.files.get("image.bin"));
+    }
+
+    @Test
+    void testShorterSignatureReplacesLongerOne() throws Exception {
+        final byte[] contents = randomBytes(BLOCK * 3);
+        new DeltaTransfer(transfer, client, write(contents)).transfer();
+        new DeltaTransfer(transfer, client, write(Arrays.copyOf(contents, BLOCK + 5))).transfer();
+        assertEquals(2, BlockSignature.read(new ByteArrayInputStream(client.files.get("image.bin.bpsig"))).getBlockCount());
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        BlockSignature.read(new ByteArrayInputStream(client.files.get("image.bin.bpsig"))).write(expected);
+        assertArrayEquals(expected.toByteArray(), client.files.get("image.bin.bpsig"));
+    }
+
+    /**
+     * Each version goes in a directory of its own, as a file that is still mapped cannot be written to on Windows
+     */
+    private FilePath write(final byte[] contents) throws Exception {
+        final File dir = new File(baseDir, Integer.toString(versions++));
+        dir.mkdir();
+        final File file = new File(dir, "image.bin");
+        Files.write(file.toPath(), contents);
+        return new FilePath(file);
+    }
+
+    private static byte[] randomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class InMemoryClient extends BPDefaultClient<BPTransfer> implements BPRandomAccessClient<BPTransfer> {
+
+        private final Map<String, byte[]> files = new HashMap<>();
+
+        public InputStream readFile(final String fileName) {
+            final byte[] contents = files.get(fileName);
+            return contents == null ? null : new ByteArrayInputStream(contents);
+        }
+
+        public void writeFile(final BPTransfer transfer, final String fileName, final long position, final InputStream content)
+                throws Exception {
+            final byte[] data = IOUtils.toByteArray(content);
+            byte[] existing = files.getOrDefault(fileName, new byte[0]);
+            if (existing.length < position + data.length)
+                existing = Arrays.copyOf(existing, (int) position + data.length);
+            System.arraycopy(data, 0, existing, (int) position, data.length);
+            files.put(fileName, existing);
+        }
+
+        public void truncateFile(final String fileName, final long length) {
+            files.put(fileName, Arrays.copyOf(files.get(fileName), (int) length));
+        }
+
+        public void transferFile(final BPTransfer transfer, final FilePath filePath, final InputStream fileContent) throws Exception {
+            assertTrue(filePath.exists(), "transferFile must be given a local file that exists");
+            files.put(filePath.getName(), IOUtils.toByteArray(fileContent));
+        }
+
+        public boolean changeDirectory(final String directory) { return true; }
+
+        public boolean makeDirectory(final String directory) { return true; }
+
+        public void disconnect() { }
+
+        public void disconnectQuietly() { }
+
+    }
+
+}
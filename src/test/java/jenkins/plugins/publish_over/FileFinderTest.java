@@ -25,6 +25,9 @@
 package jenkins.plugins.publish_over;
 
 import hudson.FilePath;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import jenkins.plugins.publish_over.helper.RandomFile;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.DirectoryScannerAccessor;
@@ -33,8 +36,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
@@ -81,6 +87,23 @@ class FileFinderTest {
         assertFilePathArraysEqual(new String[]{expectedDirName}, result.getDirectories());
     }
 
+    @Test
+    void scanIsRecordedForFlightRecorder() throws Exception {
+        new RandomFile(tmpDir, "expectMe.txt");
+        final Path dump = new File(tmpDir, "scan.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable("jenkins.plugins.publish_over.Scan").withThreshold(Duration.ZERO);
+            recording.start();
+            invoke("*.txt", null, false, false);
+            recording.stop();
+            recording.dump(dump);
+        }
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        assertEquals(1, events.size());
+        assertEquals("*.txt", events.get(0).getString("includes"));
+        assertEquals(1, events.get(0).getInt("files"));
+    }
+
     @Test
     void canReduceDirectories() {
         final String[] in = new String[] {"",
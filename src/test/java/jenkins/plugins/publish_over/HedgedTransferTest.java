@@ -0,0 +1,224 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+import jenkins.plugins.publish_over.helper.BPBuildInfoFactory;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+class HedgedTransferTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long SLOW_BYTE_MILLIS = 200;
+
+    @TempDir
+    private File baseDir;
+    private final BPBuildInfo buildInfo = new BPBuildInfoFactory().createEmpty();
+    private final BPUploadRates rates = new BPUploadRates();
+    private final BPTransfer transfer = new BPTransfer("*", "", "", false, false);
+    private final Map<String, byte[]> remote = new ConcurrentHashMap<>();
+    private final List<RenamingClient> hedges = new CopyOnWriteArrayList<>();
+
+    @Test
+    void testHedgeDelayFollowsMedianRate() {
+        assertEquals(-1, HedgedTransfer.getHedgeDelay(1000, 0));
+        assertEquals(HedgedTransfer.MIN_HEDGE_DELAY_MILLIS, HedgedTransfer.getHedgeDelay(1000, 1000000));
+        assertEquals(30000, HedgedTransfer.getHedgeDelay(10000, 1000));
+    }
+
+    @Test
+    void testUploadIsRenamedIntoPlace() throws Exception {
+        final byte[] contents = "contents".getBytes("UTF-8");
+        final HedgedTransfer hedged = create(write(contents));
+        hedged.transfer();
+        assertFalse(hedged.isHedged());
+        assertEquals(Collections.singleton("image.iso"), remote.keySet());
+        assertArrayEquals(contents, remote.get("image.iso"));
+    }
+
+    @Test
+    void testSlowUploadIsHedgedAndLoserCleanedUp() throws Exception {
+        recordFastUploads();
+        final byte[] contents = "contents".getBytes("UTF-8");
+        final RenamingClient client = new RenamingClient(Speed.SLOW);
+        final HedgedTransfer hedged = create(write(contents), client, Speed.NORMAL);
+        hedged.transfer();
+        assertTrue(hedged.isHedged());
+        assertTrue(hedged.isHedgeWon());
+        assertEquals(Collections.singleton("image.iso"), remote.keySet());
+        assertArrayEquals(contents, remote.get("image.iso"));
+        assertEquals(1, client.disconnected.getCount());
+    }
+
+    @Test
+    void testStalledHedgeIsDisconnectedWhenFirstAttemptFinishes() throws Exception {
+        recordFastUploads();
+        final byte[] contents = "contents".getBytes("UTF-8");
+        final HedgedTransfer hedged = create(write(contents), new RenamingClient(Speed.SLOW), Speed.STALLED);
+        hedged.transfer();
+        assertTrue(hedged.isHedged());
+        assertFalse(hedged.isHedgeWon());
+        assertEquals(Collections.singleton("image.iso"), remote.keySet());
+        assertArrayEquals(contents, remote.get("image.iso"));
+        assertEquals(0, hedges.get(0).disconnected.getCount());
+    }
+
+    @Test
+    void testStalledFirstAttemptIsDisconnectedAndHedgeCommitted() throws Exception {
+        recordFastUploads();
+        final byte[] contents = "contents".getBytes("UTF-8");
+        final RenamingClient client = new RenamingClient(Speed.STALLED);
+        final HedgedTransfer hedged = create(write(contents), client, Speed.NORMAL);
+        hedged.transfer();
+        assertTrue(hedged.isHedgeWon());
+        assertEquals(0, client.disconnected.getCount());
+        assertEquals(Collections.singleton("image.iso"), remote.keySet());
+        assertArrayEquals(contents, remote.get("image.iso"));
+    }
+
+    @Test
+    void testFirstAttemptCarriesOnWhenNoSessionIsFree() throws Exception {
+        recordFastUploads();
+        final byte[] contents = "contents".getBytes("UTF-8");
+        final HedgedTransfer hedged = create(write(contents), new RenamingClient(Speed.SLOW), null);
+        hedged.transfer();
+        assertFalse(hedged.isHedgeWon());
+        assertArrayEquals(contents, remote.get("image.iso"));
+    }
+
+    private void recordFastUploads() {
+        for (int i = 0; i < BPUploadRates.MIN_SAMPLES; i++)
+            rates.record(1000000000, SECOND);
+    }
+
+    private HedgedTransfer create(final FilePath file) {
+        return create(file, new RenamingClient(Speed.NORMAL), Speed.NORMAL);
+    }
+
+    /**
+     * @param hedgeSpeed how connections opened for a hedge upload, or null if there is no session for them
+     */
+    private HedgedTransfer create(final FilePath file, final RenamingClient client, final Speed hedgeSpeed) {
+        buildInfo.setUploadRates(rates);
+        buildInfo.setClientFactory(new BPClientFactory() {
+            public BPClient createClient() {
+                if (hedgeSpeed == null) throw new BapSessionLimitException("No session");
+                final RenamingClient hedge = new RenamingClient(hedgeSpeed);
+                hedges.add(hedge);
+                return hedge;
+            }
+        });
+        return new HedgedTransfer(transfer, client, buildInfo, file, "");
+    }
+
+    private FilePath write(final byte[] contents) throws Exception {
+        final File file = new File(baseDir, "image.iso");
+        Files.write(file.toPath(), contents);
+        return new FilePath(file);
+    }
+
+    private enum Speed { NORMAL, SLOW, STALLED }
+
+    /**
+     * Stores uploads in the remote map. A slow client reads a byte at a time, well past the hedge delay; a stalled one blocks
+     * until it is disconnected, like a write on a dead TCP path
+     */
+    private class RenamingClient extends BPDefaultClient<BPTransfer>
+            implements BPRenamingClient<BPTransfer>, BPRemoteNameClient<BPTransfer> {
+
+        private final Speed speed;
+        private final CountDownLatch disconnected = new CountDownLatch(1);
+
+        RenamingClient(final Speed speed) {
+            this.speed = speed;
+        }
+
+        public void transferFile(final BPTransfer transfer, final FilePath filePath, final InputStream fileContent)
+                throws Exception {
+            transferFile(transfer, filePath, filePath.getName(), fileContent);
+        }
+
+        public void transferFile(final BPTransfer transfer, final FilePath filePath, final String remoteName,
+                                 final InputStream fileContent) throws Exception {
+            if (speed == Speed.STALLED) {
+                remote.put(remoteName, new byte[0]);
+                disconnected.await();
+                throw new IOException("Connection reset");
+            }
+            if (speed == Speed.SLOW) {
+                final ByteArrayOutputStream received = new ByteArrayOutputStream();
+                remote.put(remoteName, new byte[0]);
+                for (int read = fileContent.read(); read >= 0; read = fileContent.read()) {
+                    received.write(read);
+                    Thread.sleep(SLOW_BYTE_MILLIS);
+                }
+                remote.put(remoteName, received.toByteArray());
+                return;
+            }
+            remote.put(remoteName, IOUtils.toByteArray(fileContent));
+        }
+
+        public void renameFile(final String fromName, final String toName) {
+            remote.put(toName, remote.remove(fromName));
+        }
+
+        public void deleteFile(final String fileName) {
+            remote.remove(fileName);
+        }
+
+        public boolean changeDirectory(final String directory) { return true; }
+
+        public boolean makeDirectory(final String directory) { return true; }
+
+        public void disconnect() { }
+
+        public void disconnectQuietly() {
+            disconnected.countDown();
+        }
+
+    }
+
+}
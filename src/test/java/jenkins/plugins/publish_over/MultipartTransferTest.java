@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+class MultipartTransferTest {
+
+    private static final int PART = (int) MultipartTransfer.MIN_PART_SIZE;
+
+    @TempDir
+    private File baseDir;
+    private final RemoteFile remote = new RemoteFile();
+    private final BPTransfer transfer = new BPTransfer("*", "", "", false, false);
+    private final List<String> positions = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    void testPartsAreWrittenOverSeveralConnections() throws Exception {
+        final byte[] contents = randomBytes(PART * 3 + 17);
+        final FilePath file = write(contents);
+        final MultipartTransfer multipart = create(new AtomicInteger(), file, createState(file), 4);
+        multipart.transfer();
+        assertEquals(4, multipart.getPartCount());
+        assertEquals(4, multipart.getConnections());
+        assertEquals(4, positions.size());
+        assertArrayEquals(contents, remote.contents);
+        assertEquals(contents.length, multipart.getBytesSent());
+    }
+
+    @Test
+    void testFailedPartIsRetried() throws Exception {
+        final byte[] contents = randomBytes(PART * 2);
+        final FilePath file = write(contents);
+        final AtomicInteger failures = new AtomicInteger(1);
+        create(failures, file, createState(file), 2).transfer();
+        assertEquals(0, failures.get());
+        assertEquals(2, positions.size());
+        assertArrayEquals(contents, remote.contents);
+    }
+
+    @Test
+    void testGivesUpWhenPartKeepsFailing() throws Exception {
+        final FilePath file = write(randomBytes(PART * 2));
+        final MultipartTransfer failing = create(new AtomicInteger(Integer.MAX_VALUE), file, createState(file), 2);
+        assertThrows(IOException.class, () -> failing.transfer());
+    }
+
+    @Test
+    void testCompletedPartsAreNotSentAgain() throws Exception {
+        final FilePath file = write(randomBytes(PART * 2));
+        final BPTransfer.TransferState state = createState(file);
+        state.beginMultipart(2);
+        state.partComplete(0);
+        create(new AtomicInteger(), file, state, 2).transfer();
+        assertEquals(Collections.singletonList(Integer.toString(PART)), positions);
+    }
+
+    @Test
+    void testTruncatesLongerRemoteFile() throws Exception {
+        remote.contents = new byte[PART * 3];
+        final byte[] contents = randomBytes(PART + 1);
+        final FilePath file = write(contents);
+        create(new AtomicInteger(), file, createState(file), 2).transfer();
+        assertArrayEquals(contents, remote.contents);
+    }
+
+    private MultipartTransfer create(final AtomicInteger failures, final FilePath file, final BPTransfer.TransferState state,
+                                     final int connections) throws Exception {
+        return new MultipartTransfer(transfer, new RangedClient(failures), factory(failures), file, "", state, connections, null);
+    }
+
+    private BPClientFactory factory(final AtomicInteger failures) {
+        return new BPClientFactory() {
+            public BPClient createClient() {
+                return new RangedClient(failures);
+            }
+        };
+    }
+
+    private FilePath write(final byte[] contents) throws Exception {
+        final File file = new File(baseDir, "image.iso");
+        Files.write(file.toPath(), contents);
+        return new FilePath(file);
+    }
+
+    private static BPTransfer.TransferState createState(final FilePath file) {
+        return BPTransfer.TransferState.create(new FileFinderResult(new FilePath[] {file}, new FilePath[0]));
+    }
+
+    private static byte[] randomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class RemoteFile {
+
+        private byte[] contents = new byte[0];
+
+        synchronized void write(final long position, final byte[] data) {
+            if (contents.length < position + data.length)
+                contents = Arrays.copyOf(contents, (int) position + data.length);
+            System.arraycopy(data, 0, contents, (int) position, data.length);
+        }
+
+        synchronized void truncate(final long length) {
+            contents = Arrays.copyOf(contents, (int) length);
+        }
+
+    }
+
+    /**
+     * Fails writes after the first part while there are failures left, to simulate a connection dropping part way through
+     */
+    private class RangedClient extends BPDefaultClient<BPTransfer> implements BPRandomAccessClient<BPTransfer> {
+
+        private final AtomicInteger failures;
+
+        RangedClient(final AtomicInteger failures) {
+            this.failures = failures;
+        }
+
+        public InputStream readFile(final String fileName) {
+            return null;
+        }
+
+        public void writeFile(final BPTransfer transfer, final String fileName, final long position, final InputStream content)
+                throws Exception {
+            if (position > 0 && failures.getAndUpdate(left -> Math.max(0, left - 1)) > 0)
+                throw new IOException("Connection reset");
+            remote.write(position, IOUtils.toByteArray(content));
+            positions.add(Long.toString(position));
+        }
+
+        public void truncateFile(final String fileName, final long length) {
+            remote.truncate(length);
+        }
+
+        public void transferFile(final BPTransfer transfer, final FilePath filePath, final InputStream fileContent) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean changeDirectory(final String directory) { return true; }
+
+        public boolean makeDirectory(final String directory) { return true; }
+
+        public void disconnect() { }
+
+        public void disconnectQuietly() { }
+
+    }
+
+}
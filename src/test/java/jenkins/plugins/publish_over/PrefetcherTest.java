@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+class PrefetcherTest {
+
+    private static final long SETTLE_MILLIS = 200;
+
+    @TempDir
+    private File baseDir;
+
+    @Test
+    void testFilesAreReadAhead() throws Exception {
+        final FilePath[] files = createFiles(10, 100);
+        final Prefetcher prefetcher = new Prefetcher(files, 0, 3, 1000);
+        prefetcher.start();
+        try {
+            for (int i = 0; i < files.length; i++)
+                assertArrayEquals(contents(i, 100), IOUtils.toByteArray(prefetcher.take(i)));
+        } finally {
+            prefetcher.stop();
+        }
+        assertEquals(files.length, prefetcher.getPrefetched());
+    }
+
+    @Test
+    void testNoMoreThanMaxFilesAreHeld() throws Exception {
+        final Prefetcher prefetcher = new Prefetcher(createFiles(10, 100), 0, 2, 1000);
+        prefetcher.start();
+        try {
+            Thread.sleep(SETTLE_MILLIS);
+            assertEquals(2, prefetcher.getPrefetched());
+            prefetcher.take(0);
+            Thread.sleep(SETTLE_MILLIS);
+            assertEquals(3, prefetcher.getPrefetched());
+        } finally {
+            prefetcher.stop();
+        }
+    }
+
+    @Test
+    void testNoMoreThanMaxBytesAreHeld() throws Exception {
+        final Prefetcher prefetcher = new Prefetcher(createFiles(10, 100), 0, 10, 250);
+        prefetcher.start();
+        try {
+            Thread.sleep(SETTLE_MILLIS);
+            assertEquals(2, prefetcher.getPrefetched());
+        } finally {
+            prefetcher.stop();
+        }
+    }
+
+    @Test
+    void testFileLargerThanTheMemoryIsLeftToTheUploader() throws Exception {
+        final FilePath[] files = createFiles(3, 100);
+        Files.write(new File(files[1].getRemote()).toPath(), contents(1, 300));
+        final Prefetcher prefetcher = new Prefetcher(files, 0, 3, 200);
+        prefetcher.start();
+        try {
+            assertArrayEquals(contents(0, 100), IOUtils.toByteArray(prefetcher.take(0)));
+            assertNull(prefetcher.take(1));
+            assertArrayEquals(contents(2, 100), IOUtils.toByteArray(prefetcher.take(2)));
+        } finally {
+            prefetcher.stop();
+        }
+    }
+
+    @Test
+    void testFilesThatAreNotTakenAreDropped() throws Exception {
+        final FilePath[] files = createFiles(10, 100);
+        final Prefetcher prefetcher = new Prefetcher(files, 0, 2, 1000);
+        prefetcher.start();
+        try {
+            assertArrayEquals(contents(5, 100), IOUtils.toByteArray(prefetcher.take(5)));
+            assertArrayEquals(contents(9, 100), IOUtils.toByteArray(prefetcher.take(9)));
+        } finally {
+            prefetcher.stop();
+        }
+    }
+
+    private FilePath[] createFiles(final int count, final int size) throws Exception {
+        final FilePath[] files = new FilePath[count];
+        for (int i = 0; i < count; i++) {
+            final File file = new File(baseDir, "file" + i);
+            Files.write(file.toPath(), contents(i, size));
+            files[i] = new FilePath(file);
+        }
+        return files;
+    }
+
+    private static byte[] contents(final int index, final int size) {
+        final byte[] contents = new byte[size];
+        Arrays.fill(contents, (byte) index);
+        return contents;
+    }
+
+}
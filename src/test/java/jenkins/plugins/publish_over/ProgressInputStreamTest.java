@@ -0,0 +1,73 @@
+package jenkins.plugins.publish_over;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProgressInputStreamTest {
+
+    @Test
+    void testListenerIsToldInBatches() throws IOException {
+        final List<Long> batches = new ArrayList<>();
+        final ProgressInputStream stream = new ProgressInputStream(new ByteArrayInputStream(new byte[2500]));
+        stream.setProgressListener((bytes, totalBytes) -> batches.add(bytes), 1000, 60000);
+        for (int i = 0; i < 2500; i++)
+            stream.read();
+        assertEquals(List.of(1000L, 1000L), batches);
+        stream.close();
+        assertEquals(List.of(1000L, 1000L, 500L), batches);
+        assertEquals(2500, stream.getTotalNumBytesRead());
+    }
+
+    @Test
+    void testEndOfStreamIsNotCounted() throws IOException {
+        final ProgressInputStream stream = new ProgressInputStream(new ByteArrayInputStream(new byte[3]));
+        while (stream.read() != -1) {
+            // read to the end
+        }
+        stream.read();
+        assertEquals(3, stream.getTotalNumBytesRead());
+    }
+
+    @Test
+    void testTotalAddsUpSeveralStreams() throws IOException {
+        final ProgressTotal total = new ProgressTotal();
+        for (int i = 0; i < 3; i++) {
+            final ProgressInputStream stream = new ProgressInputStream(new ByteArrayInputStream(new byte[700]));
+            stream.setProgressListener(total, 512, 60000);
+            IOUtils.toByteArray(stream);
+            stream.close();
+        }
+        assertEquals(2100, total.getBytes());
+    }
+
+    @Test
+    void testPropertyChangeListenersAreToldAboutEveryRead() throws IOException {
+        final List<Object> values = new ArrayList<>();
+        final ProgressInputStream stream = new ProgressInputStream(new ByteArrayInputStream(new byte[2]));
+        stream.addPropertyChangeListener(event -> values.add(event.getNewValue()));
+        stream.read();
+        stream.read();
+        assertEquals(List.of(1L, 2L), values);
+    }
+
+    @Test
+    void testProgressListenerIsStillToldWithPropertyChangeListener() throws IOException {
+        final ProgressTotal total = new ProgressTotal();
+        final List<Object> values = new ArrayList<>();
+        final ProgressInputStream stream = new ProgressInputStream(new ByteArrayInputStream(new byte[3]));
+        stream.setProgressListener(total, 1000, 60000);
+        stream.addPropertyChangeListener(event -> values.add(event.getNewValue()));
+        IOUtils.toByteArray(stream);
+        stream.close();
+        assertEquals(List.of(3L), values);
+        assertEquals(3, total.getBytes());
+    }
+
+}
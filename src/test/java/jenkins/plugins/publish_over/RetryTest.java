@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryTest {
+
+    @Test
+    void testFixedDelayByDefault() {
+        final Retry retry = new Retry(3, 100);
+        assertEquals(100, retry.getDelay(1, 0));
+        assertEquals(100, retry.getDelay(3, 100));
+    }
+
+    @Test
+    void testExponentialDelayIsCapped() {
+        final Retry retry = new Retry(10, 100);
+        retry.setBackoff(BPRetryBackoff.EXPONENTIAL);
+        retry.setMaxRetryDelay(1000);
+        assertEquals(100, retry.getDelay(1, 0));
+        assertEquals(200, retry.getDelay(2, 100));
+        assertEquals(800, retry.getDelay(4, 400));
+        assertEquals(1000, retry.getDelay(5, 800));
+        assertEquals(1000, retry.getDelay(Integer.MAX_VALUE, 1000));
+    }
+
+    @Test
+    void testDecorrelatedJitterStaysInRange() {
+        final Retry retry = new Retry(10, 100);
+        retry.setBackoff(BPRetryBackoff.DECORRELATED_JITTER);
+        retry.setMaxRetryDelay(5000);
+        long previous = 0;
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            final long delay = retry.getDelay(attempt, previous);
+            assertTrue(delay >= 100 && delay <= Math.min(5000, Math.max(100, previous) * 3), Long.toString(delay));
+            previous = delay;
+        }
+    }
+
+    @Test
+    void testRetryBudget() {
+        final Retry retry = new Retry(10, 100);
+        assertTrue(retry.isWithinBudget(Long.MAX_VALUE / 2, 100));
+        retry.setRetryBudget(1000);
+        assertTrue(retry.isWithinBudget(900, 100));
+        assertFalse(retry.isWithinBudget(901, 100));
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright (C) 2010-2011 by Anthony Robinson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package jenkins.plugins.publish_over;
+
+import hudson.FilePath;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SuppressWarnings("PMD.SignatureDeclareThrowsException")
+class StreamedTransferTest {
+
+    @TempDir
+    private File baseDir;
+
+    @Test
+    void testFilesArriveInOrder() throws Exception {
+        final List<FilePath> files = new ArrayList<FilePath>();
+        final List<byte[]> contents = new ArrayList<byte[]>();
+        for (int i = 0; i < 5; i++) {
+            contents.add(randomBytes(StreamedTransfer.BUFFER_SIZE * i + 3));
+            files.add(write("dir/file" + i, contents.get(i)));
+        }
+        final StreamedTransfer stream = new StreamedTransfer(new FilePath(baseDir), files);
+        try {
+            for (int i = 0; i < files.size(); i++)
+                assertArrayEquals(contents.get(i), IOUtils.toByteArray(stream.next(files.get(i))));
+            stream.finish();
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    void testUnreadContentIsSkipped() throws Exception {
+        final byte[] second = randomBytes(100);
+        final List<FilePath> files = Arrays.asList(write("first", randomBytes(StreamedTransfer.BUFFER_SIZE * 2)),
+                write("second", second));
+        final StreamedTransfer stream = new StreamedTransfer(new FilePath(baseDir), files);
+        try {
+            assertEquals(10, stream.next(files.get(0)).read(new byte[10]));
+            assertArrayEquals(second, IOUtils.toByteArray(stream.next(files.get(1))));
+            stream.finish();
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    void testFailureOnAgentIsReported() throws Exception {
+        final List<FilePath> files = Arrays.asList(write("exists", randomBytes(10)), new FilePath(new File(baseDir, "missing")));
+        final StreamedTransfer stream = new StreamedTransfer(new FilePath(baseDir), files);
+        try {
+            IOUtils.toByteArray(stream.next(files.get(0)));
+            assertThrows(FileNotFoundException.class, () -> stream.next(files.get(1)));
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    void testRelativePath() throws Exception {
+        final FilePath base = new FilePath(baseDir);
+        assertEquals("dir/file", StreamedTransfer.getRelativePath(base, new FilePath(new File(baseDir, "dir/file"))));
+        assertNull(StreamedTransfer.getRelativePath(base, new FilePath(new File(baseDir.getParentFile(), "other"))));
+    }
+
+    private FilePath write(final String path, final byte[] contents) throws Exception {
+        final File file = new File(baseDir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), contents);
+        return new FilePath(file);
+    }
+
+    private static byte[] randomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+}
@@ -34,6 +34,7 @@ import org.easymock.EasyMock;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 public class InputStreamMatcher implements IArgumentMatcher {
 
@@ -46,8 +47,20 @@ public class InputStreamMatcher implements IArgumentMatcher {
 
     private final byte[] expectedContents;
 
+    public static InputStream gzipStreamContains(final byte[] expectedContents) {
+        EasyMock.reportMatcher(new InputStreamMatcher(expectedContents, true));
+        return null;
+    }
+
+    private final boolean gzipped;
+
     public InputStreamMatcher(final byte[] expectedContents) {
+        this(expectedContents, false);
+    }
+
+    public InputStreamMatcher(final byte[] expectedContents, final boolean gzipped) {
         this.expectedContents = Arrays.copyOf(expectedContents, expectedContents.length);
+        this.gzipped = gzipped;
     }
 
     public boolean matches(final Object argument) {
@@ -55,7 +68,8 @@ public class InputStreamMatcher implements IArgumentMatcher {
             return false;
 
         try {
-            final byte[] actual = IOUtils.toByteArray((InputStream) argument);
+            final InputStream stream = gzipped ? new GZIPInputStream((InputStream) argument) : (InputStream) argument;
+            final byte[] actual = IOUtils.toByteArray(stream);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Expected (md5) = " + DigestUtils.md5Hex(expectedContents));
                 LOG.debug("Actual   (md5) = " + DigestUtils.md5Hex(actual));